@@ -1,3 +1,64 @@
+import java.util.Arrays;
+
+/**
+ * Frequency bands of the television channels, with their ranges in MHz.
+ */
 public enum Band {
-    VHF_LOW, VHF_HIGH, UHF, UNKWOWN
+    VHF_LOW(54, 88), VHF_HIGH(174, 216), UHF(470, 608), UNKWOWN(-1, -1);
+
+    private static final Band[] VALUES = values();
+
+    /**
+     * Ordinal of the band of every frequency from 0 to the top of the UHF band.
+     * Frequencies outside every range map to {@link #UNKWOWN}.
+     */
+    private static final byte[] TABLE = new byte[UHF.maxMHz + 1];
+
+    static {
+        Arrays.fill(TABLE, (byte) UNKWOWN.ordinal());
+        for (Band band : VALUES) {
+            for (int frequency = band.minMHz; frequency >= 0 && frequency <= band.maxMHz; frequency++) {
+                TABLE[frequency] = (byte) band.ordinal();
+            }
+        }
+    }
+
+    private final int minMHz;
+    private final int maxMHz;
+
+    Band(int minMHz, int maxMHz) {
+        this.minMHz = minMHz;
+        this.maxMHz = maxMHz;
+    }
+
+    /**
+     * Returns the lowest frequency of the band.
+     *
+     * @return The lowest frequency, in MHz, or -1 for {@link #UNKWOWN}.
+     */
+    public int getMinMHz() {
+        return minMHz;
+    }
+
+    /**
+     * Returns the highest frequency of the band.
+     *
+     * @return The highest frequency, in MHz, or -1 for {@link #UNKWOWN}.
+     */
+    public int getMaxMHz() {
+        return maxMHz;
+    }
+
+    /**
+     * Returns the band of a frequency, with a single table lookup.
+     *
+     * @param frequency The frequency, in MHz.
+     * @return The band of the frequency, or {@link #UNKWOWN} if it is not in any band.
+     */
+    public static Band of(int frequency) {
+        if (frequency < 0 || frequency >= TABLE.length) {
+            return UNKWOWN;
+        }
+        return VALUES[TABLE[frequency]];
+    }
 }
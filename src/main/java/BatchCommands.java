@@ -0,0 +1,320 @@
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Runs a script of commands on a television, one command per line, without
+ * any menu or prompt. The commands and their answers match the options of
+ * the interactive menu, and each command can also be given by the number of
+ * its option:
+ * <pre>
+ * 1 STATUS                  2 LIST                    3 TUNE position
+ * 4 FAV                     5 ADD name frequency      6 REMOVE position
+ * 7 SWAP position position  8 FIND query              9 RESET
+ * 0 QUIT
+ * </pre>
+ * Command names ignore case, the name given to {@code ADD} runs up to the
+ * frequency, so it may contain spaces, and lines that are blank or start with
+ * {@code #} are skipped. {@code QUIT} stops the script.
+ * <p>
+ * The script is read in large blocks into a byte buffer and each line is
+ * split in place: commands and numbers are read straight from the bytes, and
+ * only channel names and queries are decoded to strings. Answers go to the
+ * given {@link Appendable}, which should be buffered; if it is also
+ * {@link Flushable}, it is flushed before waiting for more of the script.
+ */
+final class BatchCommands {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Default limit to the length of a line, in bytes, without its break.
+     */
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    /**
+     * Command names, at the index of the menu option they match.
+     */
+    private static final String[] COMMANDS = {
+            "QUIT", "STATUS", "LIST", "TUNE", "FAV", "ADD", "REMOVE", "SWAP", "FIND", "RESET"
+    };
+
+    private final Television television;
+    private final Appendable out;
+
+    private final int bufferSize;
+    private final int maxLineLength;
+    private ByteBuffer buffer;
+    private int lineNumber;
+
+    /**
+     * Bounds of the next token found by {@link #nextToken(ByteBuffer, int, int)}.
+     */
+    private int tokenStart;
+    private int tokenEnd;
+
+    BatchCommands(Television television, Appendable out) {
+        this(television, out, BUFFER_SIZE);
+    }
+
+    BatchCommands(Television television, Appendable out, int bufferSize) {
+        this(television, out, bufferSize, MAX_LINE_LENGTH);
+    }
+
+    /**
+     * Creates a runner whose input buffer starts with the given size. It grows
+     * only to hold a line longer than it, up to the given limit, so small sizes
+     * suit many idle runners and no input can make it grow without bound.
+     * The buffer is only allocated by {@link #run(ReadableByteChannel)}, so a
+     * runner fed by {@link #execute(ByteBuffer, int, int)} has none.
+     *
+     * @param bufferSize    The initial size of the input buffer, in bytes.
+     * @param maxLineLength The longest line accepted, in bytes, without its break.
+     */
+    BatchCommands(Television television, Appendable out, int bufferSize, int maxLineLength) {
+        this.television = television;
+        this.out = out;
+        this.bufferSize = Math.max(1, Math.min(bufferSize, maxLineLength + 1));
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Runs every command read from the input until it ends or a {@code QUIT}.
+     * A line longer than the limit ends the script with an error.
+     *
+     * @param in The script.
+     * @throws IOException If the script cannot be read, the answers written,
+     *                     or a line is too long.
+     */
+    void run(ReadableByteChannel in) throws IOException {
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(bufferSize);
+        }
+        boolean ended = false;
+        while (!ended) {
+            flush();
+            ended = in.read(buffer) == -1;
+            int start = 0;
+            int limit = buffer.position();
+            for (int i = 0; i < limit; i++) {
+                if (buffer.get(i) == '\n') {
+                    if (!execute(buffer, start, i)) {
+                        flush();
+                        return;
+                    }
+                    start = i + 1;
+                }
+            }
+            if (ended) {
+                if (start < limit) {
+                    execute(buffer, start, limit);
+                }
+            } else if (start == 0 && limit == buffer.capacity()) {
+                // A single line fills the buffer
+                if (limit > maxLineLength) {
+                    out.append("[Line ");
+                    TextFormat.appendInt(out, lineNumber + 1);
+                    out.append(" is too long]\n");
+                    flush();
+                    throw new IOException("Line longer than " + maxLineLength + " bytes.");
+                }
+                ByteBuffer larger = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, maxLineLength + 1));
+                buffer.flip();
+                buffer = larger.put(buffer);
+            } else {
+                buffer.position(start);
+                buffer.limit(limit);
+                buffer.compact();
+            }
+        }
+        flush();
+    }
+
+    private void flush() throws IOException {
+        if (out instanceof Flushable flushable) {
+            flushable.flush();
+        }
+    }
+
+    /**
+     * Runs the command in the given bytes of a line, without the line break.
+     * The bytes are read at absolute indexes, so the buffer may be direct and
+     * its position and limit are left as they are. Answers are not flushed.
+     *
+     * @param line  The buffer holding the line.
+     * @param start The index of the first byte of the line.
+     * @param end   The index after the last byte of the line.
+     * @return {@code false} if the command was {@code QUIT}, otherwise {@code true}.
+     * @throws IOException If the answers cannot be written.
+     */
+    boolean execute(ByteBuffer line, int start, int end) throws IOException {
+        lineNumber++;
+        if (end > start && line.get(end - 1) == '\r') {
+            end--;
+        }
+        if (!nextToken(line, start, end) || line.get(tokenStart) == '#') return true;
+        int rest = tokenEnd;
+
+        switch (option(line, tokenStart, tokenEnd)) {
+            case 0 -> {
+                out.append("TV turned off. Bye!\n");
+                return false;
+            }
+            case 1 -> out.append(television.toString()).append('\n');
+            case 2 -> {
+                out.append("-> List of current channels:\n");
+                television.channelList(out);
+                out.append('\n');
+            }
+            case 3 -> {
+                long position = nextInt(line, rest, end);
+                if (position == TextFormat.NOT_A_NUMBER) {
+                    invalid();
+                } else {
+                    result(television.tunePosition((int) position));
+                }
+            }
+            case 4 -> result(television.toggleFavorite());
+            case 5 -> add(line, rest, end);
+            case 6 -> {
+                long position = nextInt(line, rest, end);
+                if (position == TextFormat.NOT_A_NUMBER) {
+                    invalid();
+                } else {
+                    result(television.removeChannel((int) position));
+                }
+            }
+            case 7 -> {
+                long position1 = nextInt(line, rest, end);
+                long position2 = position1 == TextFormat.NOT_A_NUMBER
+                        ? TextFormat.NOT_A_NUMBER
+                        : nextInt(line, tokenEnd, end);
+                if (position2 == TextFormat.NOT_A_NUMBER) {
+                    invalid();
+                } else {
+                    result(television.swapChannels((int) position1, (int) position2));
+                }
+            }
+            case 8 -> {
+                String query = nextToken(line, rest, end) ? text(line, tokenStart, trimEnd(line, tokenStart, end)) : "";
+                int position = television.findChannelPosition(query);
+                if (position > -1) {
+                    out.append("-> Channel found at position ");
+                    TextFormat.appendInt(out, position);
+                    out.append('\n');
+                } else {
+                    out.append("-> Channel not found!\n");
+                }
+            }
+            case 9 -> {
+                television.factorySettings();
+                result(true);
+            }
+            default -> invalid();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the menu option of a command, given by name or by number.
+     *
+     * @return The option, or -1 if the command is unknown.
+     */
+    private static int option(ByteBuffer line, int start, int end) {
+        if (end - start == 1 && line.get(start) >= '0' && line.get(start) <= '9') {
+            return line.get(start) - '0';
+        }
+        for (int option = 0; option < COMMANDS.length; option++) {
+            if (is(line, start, end, COMMANDS[option])) return option;
+        }
+        return -1;
+    }
+
+    /**
+     * Runs {@code ADD name frequency}: the frequency is the last token and the
+     * name is everything between the command and it.
+     */
+    private void add(ByteBuffer line, int start, int end) throws IOException {
+        int last = trimEnd(line, start, end);
+        int frequencyStart = last;
+        while (frequencyStart > start && !isSpace(line.get(frequencyStart - 1))) {
+            frequencyStart--;
+        }
+        long frequency = TextFormat.parseInt(line, frequencyStart, last);
+        if (!nextToken(line, start, frequencyStart) || frequency == TextFormat.NOT_A_NUMBER) {
+            invalid();
+            return;
+        }
+        String name = text(line, tokenStart, trimEnd(line, tokenStart, frequencyStart));
+        Band band = Band.of((int) frequency);
+        result(band != Band.UNKWOWN && television.addChannel(new Channel(name, (int) frequency)));
+    }
+
+    private void result(boolean ok) throws IOException {
+        out.append(ok ? "[OK]\n" : "[Error]\n");
+    }
+
+    private void invalid() throws IOException {
+        out.append("[Invalid command at line ");
+        TextFormat.appendInt(out, lineNumber);
+        out.append("]\n");
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    /**
+     * Finds the next token from {@code start}, setting its bounds.
+     *
+     * @return {@code true} if there is a token before {@code end}.
+     */
+    private boolean nextToken(ByteBuffer line, int start, int end) {
+        while (start < end && isSpace(line.get(start))) {
+            start++;
+        }
+        if (start == end) return false;
+        tokenStart = start;
+        while (start < end && !isSpace(line.get(start))) {
+            start++;
+        }
+        tokenEnd = start;
+        return true;
+    }
+
+    private static int trimEnd(ByteBuffer line, int start, int end) {
+        while (end > start && isSpace(line.get(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Checks if the bytes are the given command name, ignoring ASCII case.
+     */
+    private static boolean is(ByteBuffer line, int start, int end, String command) {
+        if (end - start != command.length()) return false;
+        for (int i = 0; i < command.length(); i++) {
+            if ((line.get(start + i) & ~0x20) != command.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static String text(ByteBuffer line, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        line.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses the next token as a number.
+     *
+     * @return The number, or {@link TextFormat#NOT_A_NUMBER} if there is no token or it is not one.
+     */
+    private long nextInt(ByteBuffer line, int start, int end) {
+        if (!nextToken(line, start, end)) return TextFormat.NOT_A_NUMBER;
+        return TextFormat.parseInt(line, tokenStart, tokenEnd);
+    }
+}
@@ -1,31 +1,68 @@
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * A channel, given by its name and frequency. Channels never change, so the
+ * same channel can be shared by any number of televisions; each television
+ * keeps the favorite status of its channels, see {@link Television#isFavorite(int)}.
+ */
 public class Channel {
 
+    /**
+     * Lowest valid frequency of a channel, in MHz.
+     */
+    public static final int MIN_FREQUENCY = Band.VHF_LOW.getMinMHz();
+
+    /**
+     * Highest valid frequency of a channel, in MHz.
+     */
+    public static final int MAX_FREQUENCY = Band.UHF.getMaxMHz();
+
+    /**
+     * Orders channels by name, ignoring case, consistently with name searches.
+     * Names that differ only in case are ordered as given, and a channel
+     * without a name comes before one named with the empty string.
+     */
+    public static final Comparator<Channel> NAME_ORDER =
+            Comparator.comparing(Channel::getSearchKey)
+                    .thenComparing(Channel::getName, Comparator.nullsFirst(Comparator.naturalOrder()));
+
     private final String name;
 
     /**
-     * Frequency of the channel, must be in [64, 608]
+     * Case-folded name used for searches, computed once at construction.
+     */
+    private final String searchKey;
+
+    /**
+     * Frequency of the channel, must be in one of the ranges of {@link Band}
      */
     private final int frequency;
 
-    private boolean isFavorite;
+    /**
+     * Band of the frequency, looked up once at construction.
+     */
+    private final Band band;
+
+    /**
+     * Rendered representation of the channel, or {@code null} until it is
+     * first rendered.
+     */
+    private String cachedString;
 
     public Channel(String name, int frequency) {
-        boolean validFrequency =
-                frequency >= 54 && frequency <= 88
-                || frequency >= 174 && frequency <= 216
-                || frequency >= 470 && frequency <= 608;
+        Band band = Band.of(frequency);
 
-        if(!validFrequency) {
+        if(band == Band.UNKWOWN) {
             throw new IllegalArgumentException("Invalid frequency.");
         }
 
         this.frequency = frequency;
+        this.band = band;
         this.name = name;
-        isFavorite = false;
-    }
-
-    public boolean isFavorite() {
-        return isFavorite;
+        this.searchKey = toSearchKey(name == null ? "" : name);
     }
 
     public int getFrequency() {
@@ -36,25 +73,102 @@ public class Channel {
         return name;
     }
 
+    /**
+     * Returns the case-folded name of the channel, as used for searches.
+     *
+     * @return The case-folded name.
+     */
+    public String getSearchKey() {
+        return searchKey;
+    }
+
+    /**
+     * Checks if the name of the channel contains the given query, ignoring case.
+     *
+     * @param searchKey The query, already folded with {@link #toSearchKey(String)}.
+     * @return {@code true} if the name contains the query, otherwise {@code false}.
+     */
+    public boolean matches(String searchKey) {
+        return this.searchKey.contains(searchKey);
+    }
+
+    /**
+     * Folds a text the same way channel names are folded for searches.
+     * The folding does not depend on the default locale.
+     *
+     * @param text The text to fold.
+     * @return The case-folded text.
+     */
+    public static String toSearchKey(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
     public Band getBand() {
-        if(frequency >= 54 && frequency <= 88) {
-            return Band.VHF_LOW;
-        } else if(frequency >= 174 && frequency <= 216) {
-            return Band.VHF_HIGH;
-        } else if(frequency >= 470 && frequency <= 608) {
-            return Band.UHF;
-        } else {
-            return Band.UNKWOWN;
-        }
+        return band;
+    }
+
+    /**
+     * Checks if another object is a channel with the same name and frequency.
+     * Channels never change, so equal channels can be used interchangeably,
+     * such as the ones a {@link ChannelTable} builds on every read.
+     *
+     * @param other The object to compare with.
+     * @return {@code true} if both channels have the same name and frequency.
+     */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Channel channel
+                && frequency == channel.frequency && Objects.equals(name, channel.name);
     }
 
-    public void toggleFavorite() {
-        isFavorite = !isFavorite;
+    @Override
+    public int hashCode() {
+        return 31 * frequency + Objects.hashCode(name);
     }
 
     public String toString() {
-        return String.format("Channel[name=%s, frequency=%dMhz, band=%s, isFavorite=%s]",
-                name, frequency, getBand(), (isFavorite ? "true" : "false"));
+        String result = cachedString;
+        if (result != null) {
+            return result;
+        }
+        result = LineupFormat.render(64 + (name == null ? 4 : name.length()), this::appendTo);
+        cachedString = result;
+        return result;
+    }
+
+    /**
+     * Writes the same representation as {@link #toString()} straight into the
+     * given destination, without building intermediate strings. A channel on
+     * its own has no favorite status, so none is shown: televisions keep it,
+     * see {@link #appendTo(Appendable, boolean)}.
+     *
+     * @param out The destination.
+     * @throws IOException If the destination fails.
+     */
+    public void appendTo(Appendable out) throws IOException {
+        appendFields(out);
+        out.append(']');
+    }
+
+    /**
+     * Writes the representation of the channel with the given favorite status,
+     * which a television keeps apart from the channel.
+     *
+     * @param out      The destination.
+     * @param favorite The favorite status to show.
+     * @throws IOException If the destination fails.
+     */
+    public void appendTo(Appendable out, boolean favorite) throws IOException {
+        appendFields(out);
+        out.append(", isFavorite=").append(favorite ? "true" : "false")
+                .append(']');
+    }
+
+    private void appendFields(Appendable out) throws IOException {
+        out.append("Channel[name=").append(name)
+                .append(", frequency=");
+        TextFormat.appendInt(out, frequency);
+        out.append("Mhz, band=").append(band.name());
     }
 
     /**
@@ -64,7 +178,5 @@ public class Channel {
     public static void main(String[] args) {
         Channel rtp1 = new Channel("RTP 1 HD", 54);
         System.out.println(rtp1);
-        rtp1.toggleFavorite();
-        System.out.println(rtp1);
     }
 }
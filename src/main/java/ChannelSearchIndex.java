@@ -0,0 +1,316 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Substring search index over the search keys of a list of channels.
+ * Every n-gram of length 1 to 3 of a name is mapped to the sorted positions
+ * of the names that contain it, so a query is answered by looking up its own
+ * n-grams instead of scanning every name.
+ * <p>
+ * The index is kept up to date incrementally by the owner of the list, which
+ * must report every insertion, removal and swap of positions.
+ */
+class ChannelSearchIndex {
+
+    /**
+     * Maximum length of the indexed n-grams.
+     */
+    private static final int GRAM_LENGTH = 3;
+
+    private final Map<Long, Postings> grams;
+
+    /**
+     * Search key of the channel at each position.
+     */
+    private final List<String> names;
+
+    /**
+     * Constructs an empty search index.
+     */
+    public ChannelSearchIndex() {
+        grams = new HashMap<>();
+        names = new ArrayList<>();
+    }
+
+    /**
+     * Constructs an index with the same content as another one.
+     *
+     * @param other The index to copy.
+     */
+    public ChannelSearchIndex(ChannelSearchIndex other) {
+        grams = new HashMap<>(other.grams);
+        grams.replaceAll((gram, postings) -> new Postings(postings));
+        names = new ArrayList<>(other.names);
+    }
+
+    /**
+     * Returns the number of indexed names.
+     *
+     * @return The number of indexed names.
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Indexes a channel at the given position, shifting the positions of the
+     * following channels up by one.
+     *
+     * @param position The position of the new channel, in [0, size()].
+     * @param channel  The channel to index.
+     */
+    public void insert(int position, Channel channel) {
+        String key = channel.getSearchKey();
+        if (position < names.size()) {
+            for (Postings postings : grams.values()) {
+                postings.shiftUp(position);
+            }
+        }
+        names.add(position, key);
+        addGrams(key, position);
+    }
+
+    /**
+     * Indexes a channel at the end of the list.
+     *
+     * @param channel The channel to index.
+     */
+    public void add(Channel channel) {
+        insert(names.size(), channel);
+    }
+
+    /**
+     * Removes the name at the given position, shifting the positions of the
+     * following names down by one.
+     *
+     * @param position The position of the name to remove.
+     */
+    public void remove(int position) {
+        removeGrams(names.remove(position), position);
+        for (Postings postings : grams.values()) {
+            postings.shiftDown(position);
+        }
+    }
+
+    /**
+     * Exchanges the names at two positions.
+     *
+     * @param position1 The position of the first name.
+     * @param position2 The position of the second name.
+     */
+    public void swap(int position1, int position2) {
+        if (position1 == position2) return;
+        String key1 = names.get(position1);
+        String key2 = names.get(position2);
+        removeGrams(key1, position1);
+        removeGrams(key2, position2);
+        addGrams(key2, position1);
+        addGrams(key1, position2);
+        names.set(position1, key2);
+        names.set(position2, key1);
+    }
+
+    /**
+     * Removes every name from the index.
+     */
+    public void clear() {
+        grams.clear();
+        names.clear();
+    }
+
+    /**
+     * Finds the first position, starting at {@code fromPosition}, whose name
+     * contains the given query.
+     *
+     * @param query        The query folded with {@link Channel#toSearchKey(String)}, not empty.
+     * @param fromPosition The first position to consider.
+     * @return The position found, or -1 if no name from {@code fromPosition} on matches.
+     */
+    public int find(String query, int fromPosition) {
+        Matches matches = new Matches(query, fromPosition);
+        return matches.hasNext() ? matches.nextInt() : -1;
+    }
+
+    /**
+     * Returns the positions whose name contains the given query, in ascending
+     * order. Positions are found one at a time as the iterator advances, so
+     * stopping early skips the rest of the search. The index must not be
+     * modified while the iterator is in use.
+     *
+     * @param query The query folded with {@link Channel#toSearchKey(String)}, not empty.
+     * @return An iterator over the matching positions.
+     */
+    public PrimitiveIterator.OfInt matches(String query) {
+        return new Matches(query, 0);
+    }
+
+    private static boolean containsAll(Postings[] required, int position) {
+        for (Postings postings : required) {
+            if (!postings.contains(position)) return false;
+        }
+        return true;
+    }
+
+    private void addGrams(String key, int position) {
+        for (int length = 1; length <= GRAM_LENGTH; length++) {
+            for (int start = 0; start + length <= key.length(); start++) {
+                grams.computeIfAbsent(gramKey(key, start, start + length), k -> new Postings())
+                        .add(position);
+            }
+        }
+    }
+
+    private void removeGrams(String key, int position) {
+        for (int length = 1; length <= GRAM_LENGTH; length++) {
+            for (int start = 0; start + length <= key.length(); start++) {
+                Long gram = gramKey(key, start, start + length);
+                Postings postings = grams.get(gram);
+                if (postings != null && postings.remove(position) && postings.size == 0) {
+                    grams.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Packs the n-gram {@code s[start, end)} and its length into a single key.
+     */
+    private static long gramKey(String s, int start, int end) {
+        long key = end - start;
+        for (int i = start; i < end; i++) {
+            key = (key << 16) | s.charAt(i);
+        }
+        return key;
+    }
+
+    /**
+     * Lazy iterator over the positions that match a query. The postings of the
+     * query n-grams are looked up once; the smallest one drives the iteration
+     * and every candidate is checked against the others.
+     */
+    private class Matches implements PrimitiveIterator.OfInt {
+        private final String query;
+        private final Postings[] required;
+        private final Postings driver;
+        private int cursor;
+        private int next;
+
+        private Matches(String query, int fromPosition) {
+            this.query = query;
+            if (query.length() <= GRAM_LENGTH) {
+                // The query is an indexed n-gram: its postings are the exact answer
+                required = null;
+                driver = grams.get(gramKey(query, 0, query.length()));
+            } else {
+                int count = query.length() - GRAM_LENGTH + 1;
+                Postings[] postings = new Postings[count];
+                Postings smallest = null;
+                for (int i = 0; i < count; i++) {
+                    postings[i] = grams.get(gramKey(query, i, i + GRAM_LENGTH));
+                    if (postings[i] == null) {
+                        smallest = null;
+                        break;
+                    }
+                    if (smallest == null || postings[i].size < smallest.size) smallest = postings[i];
+                }
+                required = postings;
+                driver = smallest;
+            }
+            cursor = driver == null ? 0 : driver.lowerBound(fromPosition);
+            next = advance();
+        }
+
+        private int advance() {
+            if (driver == null) return -1;
+            while (cursor < driver.size) {
+                int position = driver.positions[cursor++];
+                if (required == null
+                        || containsAll(required, position) && names.get(position).contains(query)) {
+                    return position;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != -1;
+        }
+
+        @Override
+        public int nextInt() {
+            if (next == -1) throw new NoSuchElementException();
+            int position = next;
+            next = advance();
+            return position;
+        }
+    }
+
+    /**
+     * Sorted set of positions that contain an n-gram.
+     */
+    private static class Postings {
+        private int[] positions;
+        private int size;
+
+        private Postings() {
+            positions = new int[4];
+        }
+
+        private Postings(Postings other) {
+            positions = Arrays.copyOf(other.positions, Math.max(other.size, 4));
+            size = other.size;
+        }
+
+        private int lowerBound(int position) {
+            int low = 0, high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (positions[mid] < position) low = mid + 1;
+                else high = mid;
+            }
+            return low;
+        }
+
+        private boolean contains(int position) {
+            int i = lowerBound(position);
+            return i < size && positions[i] == position;
+        }
+
+        private void add(int position) {
+            int i = lowerBound(position);
+            if (i < size && positions[i] == position) return;
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            System.arraycopy(positions, i, positions, i + 1, size - i);
+            positions[i] = position;
+            size++;
+        }
+
+        private boolean remove(int position) {
+            int i = lowerBound(position);
+            if (i == size || positions[i] != position) return false;
+            System.arraycopy(positions, i + 1, positions, i, size - i - 1);
+            size--;
+            return true;
+        }
+
+        private void shiftUp(int from) {
+            for (int i = lowerBound(from); i < size; i++) {
+                positions[i]++;
+            }
+        }
+
+        private void shiftDown(int from) {
+            for (int i = lowerBound(from); i < size; i++) {
+                positions[i]--;
+            }
+        }
+    }
+}
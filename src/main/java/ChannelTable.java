@@ -0,0 +1,301 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.RandomAccess;
+
+/**
+ * List of channels stored by column instead of as one object per channel:
+ * the frequencies in an {@code int[]} and the names, both as given and
+ * case-folded for searches, as slices of one shared {@code char[]} pool. A
+ * lineup costs a few bytes per channel plus its characters, and scans over a
+ * column stay in contiguous memory.
+ * <p>
+ * {@link #get(int)} builds a new {@link Channel} from the columns on every
+ * call. The column accessors, and the lookups by frequency and by name, read
+ * the columns without building a channel. The favorite status is not
+ * stored: televisions keep it apart from the channels.
+ */
+public class ChannelTable extends AbstractList<Channel> implements RandomAccess {
+
+    private int size;
+    private int[] frequencies;
+
+    /**
+     * Start of the name of each channel in {@code namePool}.
+     */
+    private int[] nameOffsets;
+
+    /**
+     * Length of the name of each channel, or -1 for a {@code null} name.
+     */
+    private int[] nameLengths;
+
+    /**
+     * Start and length of the case-folded name of each channel in {@code namePool}.
+     */
+    private int[] keyOffsets;
+    private int[] keyLengths;
+
+    private char[] namePool;
+    private int poolSize;
+
+    /**
+     * Number of characters in {@code namePool} no longer used by any channel.
+     */
+    private int poolGarbage;
+
+    /**
+     * Constructs an empty table.
+     */
+    public ChannelTable() {
+        this(16);
+    }
+
+    /**
+     * Constructs an empty table with room for the given number of channels.
+     *
+     * @param capacity The initial number of channels the table can hold.
+     */
+    public ChannelTable(int capacity) {
+        capacity = Math.max(capacity, 1);
+        frequencies = new int[capacity];
+        nameOffsets = new int[capacity];
+        nameLengths = new int[capacity];
+        keyOffsets = new int[capacity];
+        keyLengths = new int[capacity];
+        namePool = new char[capacity * 32];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Channel get(int index) {
+        checkIndex(index, size);
+        return new Channel(getName(index), frequencies[index]);
+    }
+
+    /**
+     * Returns the name of the channel at the given position.
+     *
+     * @param index The position of the channel.
+     * @return The name of the channel.
+     */
+    public String getName(int index) {
+        checkIndex(index, size);
+        int length = nameLengths[index];
+        return length == -1 ? null : new String(namePool, nameOffsets[index], length);
+    }
+
+    /**
+     * Returns the frequency of the channel at the given position.
+     *
+     * @param index The position of the channel.
+     * @return The frequency of the channel, in MHz.
+     */
+    public int getFrequency(int index) {
+        checkIndex(index, size);
+        return frequencies[index];
+    }
+
+    /**
+     * Returns the first position of a channel with the given frequency, read
+     * from the frequency column.
+     *
+     * @param frequency The frequency, in MHz.
+     * @return The position of the channel, or -1 if there is none.
+     */
+    public int indexOfFrequency(int frequency) {
+        for (int i = 0; i < size; i++) {
+            if (frequencies[i] == frequency) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the first position, from the given one on, of a channel whose
+     * case-folded name contains the query. The query is compared with the
+     * folded names in the pool, without building any string.
+     *
+     * @param searchKey The query, already folded with {@link Channel#toSearchKey(String)}.
+     * @param from      The position to start from.
+     * @return The position found, or -1 if there is none.
+     */
+    public int find(String searchKey, int from) {
+        for (int i = Math.max(from, 0); i < size; i++) {
+            if (contains(keyOffsets[i], keyLengths[i], searchKey)) return i;
+        }
+        return -1;
+    }
+
+    private boolean contains(int offset, int length, String query) {
+        int last = offset + length - query.length();
+        for (int start = offset; start <= last; start++) {
+            int k = 0;
+            while (k < query.length() && namePool[start + k] == query.charAt(k)) {
+                k++;
+            }
+            if (k == query.length()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the positions of the channels whose case-folded name contains
+     * the query, in ascending order, found as the iterator advances. The
+     * table must not be modified while the iterator is in use.
+     *
+     * @param searchKey The query, already folded with {@link Channel#toSearchKey(String)}.
+     * @return A lazy iterator over the matching positions.
+     */
+    public PrimitiveIterator.OfInt matches(String searchKey) {
+        return new PrimitiveIterator.OfInt() {
+            private int next = find(searchKey, 0);
+
+            @Override
+            public boolean hasNext() {
+                return next != -1;
+            }
+
+            @Override
+            public int nextInt() {
+                if (next == -1) {
+                    throw new NoSuchElementException();
+                }
+                int position = next;
+                next = find(searchKey, position + 1);
+                return position;
+            }
+        };
+    }
+
+    @Override
+    public Channel set(int index, Channel channel) {
+        Channel previous = get(index);
+        store(index, channel);
+        return previous;
+    }
+
+    @Override
+    public void add(int index, Channel channel) {
+        checkIndex(index, size + 1);
+        if (size == frequencies.length) {
+            int capacity = size * 2;
+            frequencies = Arrays.copyOf(frequencies, capacity);
+            nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+            nameLengths = Arrays.copyOf(nameLengths, capacity);
+            keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+            keyLengths = Arrays.copyOf(keyLengths, capacity);
+        }
+        int moved = size - index;
+        System.arraycopy(frequencies, index, frequencies, index + 1, moved);
+        System.arraycopy(nameOffsets, index, nameOffsets, index + 1, moved);
+        System.arraycopy(nameLengths, index, nameLengths, index + 1, moved);
+        System.arraycopy(keyOffsets, index, keyOffsets, index + 1, moved);
+        System.arraycopy(keyLengths, index, keyLengths, index + 1, moved);
+        nameLengths[index] = -1;
+        keyLengths[index] = 0;
+        size++;
+        store(index, channel);
+        modCount++;
+    }
+
+    @Override
+    public Channel remove(int index) {
+        Channel previous = get(index);
+        poolGarbage += Math.max(nameLengths[index], 0) + keyLengths[index];
+        int moved = size - index - 1;
+        System.arraycopy(frequencies, index + 1, frequencies, index, moved);
+        System.arraycopy(nameOffsets, index + 1, nameOffsets, index, moved);
+        System.arraycopy(nameLengths, index + 1, nameLengths, index, moved);
+        System.arraycopy(keyOffsets, index + 1, keyOffsets, index, moved);
+        System.arraycopy(keyLengths, index + 1, keyLengths, index, moved);
+        size--;
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        poolSize = 0;
+        poolGarbage = 0;
+        modCount++;
+    }
+
+    /**
+     * Writes the columns of a channel at an existing position. The names are
+     * only appended to the pool if they differ from the ones already stored.
+     */
+    private void store(int index, Channel channel) {
+        frequencies[index] = channel.getFrequency();
+
+        String name = channel.getName();
+        if (sameName(index, name)) return;
+        poolGarbage += Math.max(nameLengths[index], 0) + keyLengths[index];
+        nameLengths[index] = -1;
+        keyLengths[index] = 0;
+        if (name == null) return;
+        if (poolGarbage > poolSize / 2) {
+            compactPool();
+        }
+        nameOffsets[index] = appendToPool(name);
+        nameLengths[index] = name.length();
+        String key = channel.getSearchKey();
+        keyOffsets[index] = appendToPool(key);
+        keyLengths[index] = key.length();
+    }
+
+    private int appendToPool(String text) {
+        if (poolSize + text.length() > namePool.length) {
+            namePool = Arrays.copyOf(namePool, Math.max(poolSize + text.length(), namePool.length * 2));
+        }
+        int offset = poolSize;
+        text.getChars(0, text.length(), namePool, offset);
+        poolSize += text.length();
+        return offset;
+    }
+
+    private boolean sameName(int index, String name) {
+        int length = nameLengths[index];
+        if (name == null || length == -1) {
+            return name == null && length == -1;
+        }
+        if (length != name.length()) return false;
+        int offset = nameOffsets[index];
+        for (int i = 0; i < length; i++) {
+            if (namePool[offset + i] != name.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Rewrites the pool with only the names still in use, in position order.
+     */
+    private void compactPool() {
+        char[] pool = new char[Math.max(namePool.length, 16)];
+        int used = 0;
+        for (int i = 0; i < size; i++) {
+            int length = nameLengths[i];
+            if (length <= 0) continue;
+            System.arraycopy(namePool, nameOffsets[i], pool, used, length);
+            nameOffsets[i] = used;
+            used += length;
+            System.arraycopy(namePool, keyOffsets[i], pool, used, keyLengths[i]);
+            keyOffsets[i] = used;
+            used += keyLengths[i];
+        }
+        namePool = pool;
+        poolSize = used;
+        poolGarbage = 0;
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
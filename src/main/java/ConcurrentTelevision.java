@@ -0,0 +1,339 @@
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Television that can be used by several threads at once, for instance by the
+ * remote controls of a single set-top session.
+ * <p>
+ * Changes to the list of channels take the write lock of a {@link StampedLock}.
+ * Tuning only takes the read lock, so it never waits for readers or for other
+ * tuning calls, which update the tuned position with compare-and-set. Status
+ * reads, like {@link #toString()} or {@link #getChannel(int)}, first run
+ * without any lock under an optimistic stamp and only retry under the read
+ * lock if a change happened meanwhile.
+ * <p>
+ * Lazy streams are collected under the read lock before being returned, and
+ * the predicate given to {@link #removeIf(Predicate)} runs under the write
+ * lock, so it must not call back into the television.
+ */
+public class ConcurrentTelevision extends Television {
+
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Constructs a new concurrent television with factory default channels.
+     */
+    public ConcurrentTelevision() {
+        super();
+    }
+
+    /**
+     * Constructs a new concurrent television with factory default channels,
+     * kept in the given list.
+     *
+     * @param storage The list that stores the channels of the television.
+     * @see Television#Television(List)
+     */
+    public ConcurrentTelevision(List<Channel> storage) {
+        super(storage);
+    }
+
+    /**
+     * Constructs a new concurrent television that reads its channels from a
+     * mapped store.
+     *
+     * @param source The store with the channels of the television.
+     * @see Television#Television(MappedChannelStore)
+     */
+    public ConcurrentTelevision(MappedChannelStore source) {
+        super(source);
+    }
+
+    /**
+     * Runs a read without locking, then checks that no write happened
+     * meanwhile. If one did, the result may be inconsistent, or the read may
+     * even have failed, so it runs again under the read lock.
+     */
+    private <T> T read(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) return result;
+            } catch (RuntimeException e) {
+                // Saw a write in progress, the read lock below waits for it to finish
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int readInt(IntSupplier reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                int result = reader.getAsInt();
+                if (lock.validate(stamp)) return result;
+            } catch (RuntimeException e) {
+                // Saw a write in progress, the read lock below waits for it to finish
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.getAsInt();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private boolean readBoolean(BooleanSupplier reader) {
+        return readInt(() -> reader.getAsBoolean() ? 1 : 0) == 1;
+    }
+
+    /**
+     * Runs an operation that must not overlap with changes to the list, but
+     * may overlap with reads and with other shared operations.
+     */
+    private boolean shared(BooleanSupplier operation) {
+        long stamp = lock.readLock();
+        try {
+            return operation.getAsBoolean();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private <T> T exclusive(Supplier<T> operation) {
+        long stamp = lock.writeLock();
+        try {
+            return operation.get();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private boolean exclusiveBoolean(BooleanSupplier operation) {
+        long stamp = lock.writeLock();
+        try {
+            return operation.getAsBoolean();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private int exclusiveInt(IntSupplier operation) {
+        long stamp = lock.writeLock();
+        try {
+            return operation.getAsInt();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean isTuned() {
+        return readBoolean(super::isTuned);
+    }
+
+    @Override
+    public int getNumberOfChannels() {
+        return readInt(super::getNumberOfChannels);
+    }
+
+    @Override
+    public boolean tunePosition(int position) {
+        return shared(() -> super.tunePosition(position));
+    }
+
+    @Override
+    public boolean tuneRelative(int delta) {
+        return shared(() -> super.tuneRelative(delta));
+    }
+
+    @Override
+    public boolean channelUp() {
+        return shared(super::channelUp);
+    }
+
+    @Override
+    public boolean channelDown() {
+        return shared(super::channelDown);
+    }
+
+    @Override
+    public boolean previousChannel() {
+        return shared(super::previousChannel);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The favorite status is a single bit flipped atomically, so toggling only
+     * takes the read lock, like tuning. Every edit that adds channels makes
+     * room for their bits under the write lock, so a flip never reallocates
+     * the bits under a concurrent one.
+     */
+    @Override
+    public boolean toggleFavorite() {
+        return shared(super::toggleFavorite);
+    }
+
+    @Override
+    public boolean isFavorite(int position) {
+        return readBoolean(() -> super.isFavorite(position));
+    }
+
+    @Override
+    public boolean nextFavorite() {
+        return shared(super::nextFavorite);
+    }
+
+    @Override
+    public boolean previousFavorite() {
+        return shared(super::previousFavorite);
+    }
+
+    @Override
+    public IntStream favorites() {
+        return IntStream.of(read(() -> super.favorites().toArray()));
+    }
+
+    @Override
+    public boolean addChannel(Channel channel) {
+        return exclusiveBoolean(() -> super.addChannel(channel));
+    }
+
+    @Override
+    public BitSet addChannels(Collection<Channel> channels) {
+        return exclusive(() -> super.addChannels(channels));
+    }
+
+    @Override
+    public BitSet addChannels(Channel[] channels) {
+        return exclusive(() -> super.addChannels(channels));
+    }
+
+    @Override
+    public boolean addChannel(int position, Channel channel) {
+        return exclusiveBoolean(() -> super.addChannel(position, channel));
+    }
+
+    @Override
+    public boolean removeChannel(int position) {
+        return exclusiveBoolean(() -> super.removeChannel(position));
+    }
+
+    @Override
+    public int removeChannels(int... positions) {
+        return exclusiveInt(() -> super.removeChannels(positions));
+    }
+
+    @Override
+    public int removeIf(Predicate<Channel> filter) {
+        return exclusiveInt(() -> super.removeIf(filter));
+    }
+
+    @Override
+    public int findChannelPosition(String nameQuery) {
+        return readInt(() -> super.findChannelPosition(nameQuery));
+    }
+
+    @Override
+    public IntStream findChannelPositions(String nameQuery) {
+        return IntStream.of(read(() -> super.findChannelPositions(nameQuery).toArray()));
+    }
+
+    @Override
+    public IntStream findChannelPositions(String nameQuery, int limit) {
+        return IntStream.of(read(() -> super.findChannelPositions(nameQuery, limit).toArray()));
+    }
+
+    @Override
+    public boolean swapChannels(int position1, int position2) {
+        return exclusiveBoolean(() -> super.swapChannels(position1, position2));
+    }
+
+    @Override
+    public Channel getChannel(int position) {
+        return read(() -> super.getChannel(position));
+    }
+
+    @Override
+    public Channel getChannelByFrequency(int frequency) {
+        return read(() -> super.getChannelByFrequency(frequency));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The published version is built under the read lock, so it is never taken
+     * in the middle of a change.
+     */
+    @Override
+    public LineupSnapshot snapshot() {
+        long stamp = lock.readLock();
+        try {
+            return super.snapshot();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return read(super::toString);
+    }
+
+    @Override
+    public String channelList() {
+        return read(super::channelList);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The destination cannot take back what was written, so the list is
+     * written under the read lock instead of optimistically.
+     */
+    @Override
+    public void channelList(Appendable out) throws IOException {
+        long stamp = lock.readLock();
+        try {
+            super.channelList(out);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void factorySettings() {
+        long stamp = lock.writeLock();
+        try {
+            super.factorySettings();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    void restore(Channel[] channels, PositionBits favoriteBits, int currentPosition) {
+        long stamp = lock.writeLock();
+        try {
+            super.restore(channels, favoriteBits, currentPosition);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+import java.util.List;
+
+/**
+ * Factory default lineup, built once and shared by every television. Its
+ * channels cannot be changed, and the indexes over them are only read: a
+ * television that edits its lineup after a factory reset copies them first.
+ * This makes a factory reset a matter of pointing at these structures.
+ */
+final class FactoryLineup {
+
+    /**
+     * Factory default channels. These channels are used to reset a television
+     * to its factory settings.
+     */
+    static final List<Channel> CHANNELS = List.of(
+            new Channel("RTP 1 HD", 54),
+            new Channel("CM TV HD", 62),
+            new Channel("SPORT.TV + HD", 78),
+            new Channel("Canal 11 HD", 86),
+            new Channel("Globo Portugal HD", 174),
+            new Channel("TVI Reality HD", 182),
+            new Channel("SIC Mulher HD", 190),
+            new Channel("SIC Caras HD", 198),
+            new Channel("SIC Radical HD", 206),
+            new Channel("Discovery Channel HD", 470)
+    );
+
+    /**
+     * Factory channels in a tree, for televisions stored in an {@link IndexedChannelList}.
+     */
+    static final IndexedChannelList TREE = new IndexedChannelList(CHANNELS);
+
+    /**
+     * Factory channels indexed by frequency, laid out like {@code Television}'s frequency index.
+     */
+    static final Channel[] FREQUENCY_INDEX = new Channel[Channel.MAX_FREQUENCY - Channel.MIN_FREQUENCY + 1];
+
+    /**
+     * Search index over the factory channel names.
+     */
+    static final ChannelSearchIndex SEARCH_INDEX = new ChannelSearchIndex();
+
+    static {
+        for (Channel channel : CHANNELS) {
+            FREQUENCY_INDEX[channel.getFrequency() - Channel.MIN_FREQUENCY] = channel;
+            SEARCH_INDEX.add(channel);
+        }
+    }
+
+    private FactoryLineup() {
+    }
+}
@@ -0,0 +1,216 @@
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * List of channels stored in a balanced tree ordered by position (an implicit
+ * treap), where every node knows the size of its subtree. Reading, replacing,
+ * inserting and removing a channel at any position take O(log n) time, so
+ * removing many channels from the front of a large lineup does not shift the
+ * rest of the list like an {@code ArrayList} does.
+ * <p>
+ * Nodes are never modified once built: every change copies the path from the
+ * root to the changed position and shares the rest of the tree. This makes
+ * {@link #snapshot()} O(1).
+ */
+public class IndexedChannelList extends AbstractList<Channel> {
+
+    private final SplittableRandom random;
+    private Node root;
+
+    /**
+     * Constructs an empty list.
+     */
+    public IndexedChannelList() {
+        random = new SplittableRandom();
+        root = null;
+    }
+
+    /**
+     * Constructs a list with the channels of the given collection, in the
+     * order returned by its iterator.
+     *
+     * @param channels The channels to add.
+     */
+    public IndexedChannelList(Collection<? extends Channel> channels) {
+        this();
+        addAll(channels);
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public Channel get(int index) {
+        return get(root, index);
+    }
+
+    /**
+     * Replaces the content of this list with the content of another one, in
+     * O(1) time, by sharing its tree.
+     *
+     * @param other The list to copy.
+     */
+    public void assign(IndexedChannelList other) {
+        root = other.root;
+        modCount++;
+    }
+
+    /**
+     * Returns an immutable list with the channels currently in this list, in
+     * O(1) time. The snapshot shares the tree with this list, and later changes
+     * to this list build new nodes instead of touching the shared ones.
+     *
+     * @return An immutable snapshot of this list.
+     */
+    public List<Channel> snapshot() {
+        return new Snapshot(root);
+    }
+
+    private static Channel get(Node root, int index) {
+        checkIndex(index, size(root));
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.value;
+            }
+        }
+    }
+
+    @Override
+    public Channel set(int index, Channel channel) {
+        Channel previous = get(index);
+        root = replace(root, index, channel);
+        return previous;
+    }
+
+    @Override
+    public void add(int index, Channel channel) {
+        checkIndex(index, size() + 1);
+        Node[] parts = split(root, index);
+        root = merge(merge(parts[0], new Node(channel, null, null, random.nextInt())), parts[1]);
+        modCount++;
+    }
+
+    @Override
+    public Channel remove(int index) {
+        checkIndex(index, size());
+        Node[] parts = split(root, index);
+        Node[] rest = split(parts[1], 1);
+        root = merge(parts[0], rest[1]);
+        modCount++;
+        return rest[0].value;
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        modCount++;
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Returns a copy of the tree with the value at the given index replaced.
+     */
+    private static Node replace(Node node, int index, Channel channel) {
+        int leftSize = size(node.left);
+        if (index < leftSize) {
+            return new Node(node.value, replace(node.left, index, channel), node.right, node.priority);
+        } else if (index > leftSize) {
+            return new Node(node.value, node.left, replace(node.right, index - leftSize - 1, channel), node.priority);
+        } else {
+            return new Node(channel, node.left, node.right, node.priority);
+        }
+    }
+
+    /**
+     * Splits a tree in the trees of its first {@code count} values and of the rest.
+     */
+    private static Node[] split(Node node, int count) {
+        if (node == null) {
+            return new Node[2];
+        }
+        int leftSize = size(node.left);
+        if (count <= leftSize) {
+            Node[] parts = split(node.left, count);
+            parts[1] = new Node(node.value, parts[1], node.right, node.priority);
+            return parts;
+        } else {
+            Node[] parts = split(node.right, count - leftSize - 1);
+            parts[0] = new Node(node.value, node.left, parts[0], node.priority);
+            return parts;
+        }
+    }
+
+    /**
+     * Joins two trees, all values of {@code left} coming before those of {@code right}.
+     */
+    private static Node merge(Node left, Node right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (left.priority > right.priority) {
+            return new Node(left.value, left.left, merge(left.right, right), left.priority);
+        } else {
+            return new Node(right.value, merge(left, right.left), right.right, right.priority);
+        }
+    }
+
+    /**
+     * Read-only view of a tree that no list modifies anymore.
+     */
+    private static final class Snapshot extends AbstractList<Channel> {
+        private final Node root;
+
+        private Snapshot(Node root) {
+            this.root = root;
+        }
+
+        @Override
+        public int size() {
+            return IndexedChannelList.size(root);
+        }
+
+        @Override
+        public Channel get(int index) {
+            return IndexedChannelList.get(root, index);
+        }
+    }
+
+    /**
+     * Immutable tree node. The priority keeps the tree balanced with high
+     * probability: a node always has a higher priority than its children.
+     */
+    private static final class Node {
+        private final Channel value;
+        private final Node left;
+        private final Node right;
+        private final int size;
+        private final int priority;
+
+        private Node(Channel value, Node left, Node right, int priority) {
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + size(left) + size(right);
+            this.priority = priority;
+        }
+    }
+}
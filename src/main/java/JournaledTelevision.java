@@ -0,0 +1,491 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Television that survives crashes: every change is appended to a
+ * {@link TelevisionJournal} in a directory, and opening the directory again
+ * loads the last snapshot and replays the journal on top of it.
+ * <p>
+ * The durability is chosen when the television is opened. With a sync
+ * interval of 0, every change is forced to disk before the call returns.
+ * Otherwise changes are forced together by a background thread every given
+ * number of milliseconds, so a crash loses at most that interval of changes,
+ * and each call only pays for copying a few bytes to a buffer. Once the
+ * journal grows past {@value #COMPACTION_THRESHOLD} bytes it is compacted
+ * into a new snapshot.
+ * <p>
+ * Only operations that change the television are recorded, and only when
+ * they succeed. The operation is recorded rather than its result, so
+ * replaying it on the same state gives the same result. If the journal
+ * cannot be written, by a change or by the background thread, later changes
+ * are refused, before they are applied, until {@link #sync()} or
+ * {@link #compact()} saves the whole television again. Snapshots keep the
+ * tuned position but not the previous one, so after recovery
+ * {@link #previousChannel()} has nothing to return to until the next tune. Like
+ * {@link Television}, it is meant to be used by a single thread.
+ */
+public class JournaledTelevision extends Television implements AutoCloseable {
+
+    private static final int COMPACTION_THRESHOLD = 1 << 20;
+
+    private static final byte ADD = 1;
+    private static final byte INSERT = 2;
+    private static final byte ADD_BATCH = 3;
+    private static final byte REMOVE = 4;
+    private static final byte REMOVE_MANY = 5;
+    private static final byte SWAP = 6;
+    private static final byte TOGGLE_FAVORITE = 7;
+    private static final byte TUNE = 8;
+    private static final byte TUNE_RELATIVE = 9;
+    private static final byte NEXT_FAVORITE = 10;
+    private static final byte PREVIOUS_FAVORITE = 11;
+    private static final byte FACTORY_SETTINGS = 12;
+
+    private final TelevisionJournal journal;
+    private final ScheduledExecutorService syncer;
+    private ByteBuffer record = ByteBuffer.allocate(256);
+
+    /**
+     * Failure to write the journal, which refuses every change until the
+     * television is saved again, or {@code null} if the journal is sound.
+     */
+    private volatile IOException failure;
+
+    private volatile boolean closed;
+
+    private JournaledTelevision(Path directory, long syncMillis) throws IOException {
+        super();
+        journal = TelevisionJournal.open(directory, this, this::replay);
+        if (syncMillis > 0) {
+            syncer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "television-journal");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncer.scheduleWithFixedDelay(this::backgroundSync, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        } else {
+            syncer = null;
+        }
+    }
+
+    /**
+     * Opens the television kept in a directory, creating it with factory
+     * settings if the directory has none.
+     *
+     * @param directory  The directory with the journal and the snapshots.
+     * @param syncMillis How often the changes are forced to disk, in
+     *                   milliseconds, or 0 to force every change before it returns.
+     * @return The television, with every change recorded in the directory applied.
+     * @throws IOException If the directory cannot be read or is corrupt.
+     */
+    public static JournaledTelevision open(Path directory, long syncMillis) throws IOException {
+        if (syncMillis < 0) {
+            throw new IllegalArgumentException("Negative sync interval.");
+        }
+        return new JournaledTelevision(directory, syncMillis);
+    }
+
+    private void backgroundSync() {
+        try {
+            journal.sync();
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Forces every recorded change to disk now. After a failure to write the
+     * journal, some changes may be missing from it, so the television is
+     * compacted instead; once that succeeds, changes are accepted again.
+     *
+     * @throws IOException If the journal cannot be written.
+     */
+    public void sync() throws IOException {
+        if (failure != null) {
+            compact();
+            return;
+        }
+        try {
+            journal.sync();
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+    }
+
+    /**
+     * Saves the television as a new snapshot and empties the journal. Once
+     * it succeeds, changes are accepted again after a failure.
+     *
+     * @throws IOException If the files cannot be written.
+     */
+    public void compact() throws IOException {
+        journal.compact(this);
+        failure = null;
+    }
+
+    /**
+     * Forces every recorded change to disk and closes the journal.
+     *
+     * @throws IOException If the journal cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (syncer != null) {
+            syncer.shutdown();
+        }
+        journal.close();
+    }
+
+    /**
+     * Checks that a change can be recorded, before it is applied, so the
+     * television never holds a change that the journal refused.
+     */
+    private void checkJournal() {
+        if (closed) {
+            throw new IllegalStateException("The television journal is closed.");
+        }
+        IOException failed = failure;
+        if (failed != null) {
+            throw new UncheckedIOException("The television journal could not be written.", failed);
+        }
+    }
+
+    /**
+     * Starts a record for an operation in the reused buffer.
+     */
+    private void begin(byte operation) {
+        record.clear();
+        record.put(operation);
+    }
+
+    private void ensure(int bytes) {
+        if (record.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(record.capacity() * 2, record.position() + bytes));
+            record.flip();
+            record = larger.put(record);
+        }
+    }
+
+    private void putInt(int value) {
+        ensure(4);
+        record.putInt(value);
+    }
+
+    private void putChannel(Channel channel) {
+        String name = channel.getName();
+        byte[] bytes = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+        ensure(8 + (bytes == null ? 0 : bytes.length));
+        record.putInt(channel.getFrequency());
+        record.putInt(bytes == null ? -1 : bytes.length);
+        if (bytes != null) {
+            record.put(bytes);
+        }
+    }
+
+    /**
+     * Appends the record to the journal and applies the durability policy.
+     * Changes cannot throw checked exceptions, so failures are unchecked, and
+     * they refuse later changes until the television is saved again.
+     */
+    private void commit() {
+        try {
+            record.flip();
+            journal.append(record);
+            if (syncer == null) {
+                journal.sync();
+            }
+            if (journal.size() > COMPACTION_THRESHOLD) {
+                journal.compact(this);
+            }
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void record(byte operation) {
+        begin(operation);
+        commit();
+    }
+
+    private void record(byte operation, int argument) {
+        begin(operation);
+        putInt(argument);
+        commit();
+    }
+
+    /**
+     * Applies a record read back from the journal, without recording it again.
+     */
+    private void replay(ByteBuffer data) {
+        byte operation = data.get();
+        switch (operation) {
+            case ADD -> super.addChannel(readChannel(data));
+            case INSERT -> {
+                int position = data.getInt();
+                super.addChannel(position, readChannel(data));
+            }
+            case ADD_BATCH -> {
+                Channel[] channels = new Channel[data.getInt()];
+                for (int i = 0; i < channels.length; i++) {
+                    channels[i] = readChannel(data);
+                }
+                super.addChannels(channels);
+            }
+            case REMOVE -> super.removeChannel(data.getInt());
+            case REMOVE_MANY -> {
+                int[] positions = new int[data.getInt()];
+                for (int i = 0; i < positions.length; i++) {
+                    positions[i] = data.getInt();
+                }
+                super.removeChannels(positions);
+            }
+            case SWAP -> super.swapChannels(data.getInt(), data.getInt());
+            case TOGGLE_FAVORITE -> super.toggleFavorite();
+            case TUNE -> super.tunePosition(data.getInt());
+            case TUNE_RELATIVE -> super.tuneRelative(data.getInt());
+            case NEXT_FAVORITE -> super.nextFavorite();
+            case PREVIOUS_FAVORITE -> super.previousFavorite();
+            case FACTORY_SETTINGS -> super.factorySettings();
+            default -> throw new IllegalStateException("Unknown journal operation: " + operation);
+        }
+    }
+
+    private static Channel readChannel(ByteBuffer data) {
+        int frequency = data.getInt();
+        int length = data.getInt();
+        String name = null;
+        if (length != -1) {
+            byte[] bytes = new byte[length];
+            data.get(bytes);
+            name = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return new Channel(name, frequency);
+    }
+
+    @Override
+    public boolean tunePosition(int position) {
+        checkJournal();
+        if (!super.tunePosition(position)) return false;
+        record(TUNE, position);
+        return true;
+    }
+
+    @Override
+    public boolean tuneRelative(int delta) {
+        checkJournal();
+        if (!super.tuneRelative(delta)) return false;
+        record(TUNE_RELATIVE, delta);
+        return true;
+    }
+
+    @Override
+    public boolean channelUp() {
+        return tuneRelative(1);
+    }
+
+    @Override
+    public boolean channelDown() {
+        return tuneRelative(-1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Snapshots do not keep the previous position, so the channel tuned is
+     * recorded instead, which replays the same from the current position.
+     */
+    @Override
+    public boolean previousChannel() {
+        checkJournal();
+        if (!super.previousChannel()) return false;
+        record(TUNE, currentPosition());
+        return true;
+    }
+
+    @Override
+    public boolean toggleFavorite() {
+        checkJournal();
+        if (!super.toggleFavorite()) return false;
+        record(TOGGLE_FAVORITE);
+        return true;
+    }
+
+    @Override
+    public boolean nextFavorite() {
+        checkJournal();
+        if (!super.nextFavorite()) return false;
+        record(NEXT_FAVORITE);
+        return true;
+    }
+
+    @Override
+    public boolean previousFavorite() {
+        checkJournal();
+        if (!super.previousFavorite()) return false;
+        record(PREVIOUS_FAVORITE);
+        return true;
+    }
+
+    @Override
+    public boolean addChannel(Channel channel) {
+        checkJournal();
+        if (!super.addChannel(channel)) return false;
+        begin(ADD);
+        putChannel(channel);
+        commit();
+        return true;
+    }
+
+    @Override
+    public BitSet addChannels(Collection<Channel> channels) {
+        if (channels == null) return new BitSet();
+        return addChannels(channels.toArray(new Channel[0]));
+    }
+
+    @Override
+    public BitSet addChannels(Channel[] channels) {
+        checkJournal();
+        BitSet rejected = super.addChannels(channels);
+        if (rejected.isEmpty() && channels != null && channels.length > 0) {
+            begin(ADD_BATCH);
+            putInt(channels.length);
+            for (Channel channel : channels) {
+                putChannel(channel);
+            }
+            commit();
+        }
+        return rejected;
+    }
+
+    @Override
+    public boolean addChannel(int position, Channel channel) {
+        checkJournal();
+        if (!super.addChannel(position, channel)) return false;
+        begin(INSERT);
+        putInt(position);
+        putChannel(channel);
+        commit();
+        return true;
+    }
+
+    @Override
+    public boolean removeChannel(int position) {
+        checkJournal();
+        if (!super.removeChannel(position)) return false;
+        record(REMOVE, position);
+        return true;
+    }
+
+    @Override
+    public int removeChannels(int... positions) {
+        checkJournal();
+        int removed = super.removeChannels(positions);
+        if (removed > 0) {
+            begin(REMOVE_MANY);
+            putInt(positions.length);
+            for (int position : positions) {
+                putInt(position);
+            }
+            commit();
+        }
+        return removed;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The predicate cannot be recorded, so the positions it selects are
+     * removed, and recorded, instead.
+     */
+    @Override
+    public int removeIf(Predicate<Channel> filter) {
+        if (filter == null) return 0;
+        List<Integer> selected = new ArrayList<>();
+        for (int position = 0; position < getNumberOfChannels(); position++) {
+            if (filter.test(getChannel(position))) {
+                selected.add(position);
+            }
+        }
+        return removeChannels(selected.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    @Override
+    public boolean swapChannels(int position1, int position2) {
+        checkJournal();
+        if (!super.swapChannels(position1, position2)) return false;
+        begin(SWAP);
+        putInt(position1);
+        putInt(position2);
+        commit();
+        return true;
+    }
+
+    @Override
+    public void factorySettings() {
+        checkJournal();
+        super.factorySettings();
+        record(FACTORY_SETTINGS);
+    }
+
+    /**
+     * Test program for crash recovery: records some changes, reopens the
+     * directory, then tears the last record, as a crash while writing it
+     * would, and reopens it again.
+     * @param args
+     * @throws IOException If the temporary directory cannot be used.
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("television-journal");
+        Path journalFile = directory.resolve("television.journal");
+        try {
+            String expected;
+            try (JournaledTelevision television = open(directory, 0)) {
+                television.addChannel(new Channel("Euronews", 478));
+                television.tunePosition(10);
+                television.toggleFavorite();
+                television.swapChannels(0, 10);
+                expected = television + "\n" + television.channelList();
+            }
+            long validSize = Files.size(journalFile);
+
+            try (JournaledTelevision television = open(directory, 0)) {
+                System.out.println("Recovered: " + expected.equals(television + "\n" + television.channelList()));
+                television.removeChannel(0);
+            }
+            try (FileChannel file = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+                file.truncate(file.size() - 2);
+            }
+
+            try (JournaledTelevision television = open(directory, 0)) {
+                System.out.println("Torn record dropped: "
+                        + expected.equals(television + "\n" + television.channelList()));
+                System.out.println("Torn tail truncated: " + (Files.size(journalFile) == validSize));
+            }
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+}
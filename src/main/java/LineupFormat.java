@@ -0,0 +1,87 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Renders the status line and the channel list of a lineup, in the format of
+ * {@link Television#toString()} and {@link Television#channelList()}, for
+ * every class that shows a lineup: televisions, their snapshots and the
+ * devices of a fleet.
+ */
+final class LineupFormat {
+
+    /**
+     * Something that writes itself into an {@link Appendable}.
+     */
+    @FunctionalInterface
+    interface Rendering {
+        void appendTo(Appendable out) throws IOException;
+    }
+
+    private LineupFormat() {
+    }
+
+    /**
+     * Renders into a new string.
+     *
+     * @param capacity  The expected length of the string.
+     * @param rendering What to render.
+     * @return The rendered string.
+     */
+    static String render(int capacity, Rendering rendering) {
+        StringBuilder sb = new StringBuilder(capacity);
+        try {
+            rendering.appendTo(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringBuilder never fails
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Renders the status line of a lineup.
+     *
+     * @param channels  The channels, in position order.
+     * @param favorites The positions of the favorite channels, or {@code null} if there are none.
+     * @param position  The tuned position, or -1 if none.
+     * @return The status line.
+     */
+    static String status(List<Channel> channels, PositionBits favorites, int position) {
+        return render(160, out -> {
+            out.append("Television[currentPosition=");
+            TextFormat.appendInt(out, position);
+            out.append(", currentChannel=");
+            if (position != -1) {
+                channels.get(position).appendTo(out, isFavorite(favorites, position));
+            } else {
+                out.append("None");
+            }
+            out.append(", numberChannels=");
+            TextFormat.appendInt(out, channels.size());
+            out.append(']');
+        });
+    }
+
+    /**
+     * Writes the channel list of a lineup, one numbered row per channel.
+     *
+     * @param out       The destination.
+     * @param channels  The channels, in position order.
+     * @param favorites The positions of the favorite channels, or {@code null} if there are none.
+     * @throws IOException If the destination fails.
+     */
+    static void appendChannelList(Appendable out, List<Channel> channels, PositionBits favorites)
+            throws IOException {
+        int size = channels.size();
+        for (int i = 0; i < size; i++) {
+            TextFormat.appendInt(out, i + 1, 3);
+            out.append(". ");
+            channels.get(i).appendTo(out, isFavorite(favorites, i));
+            out.append('\n');
+        }
+    }
+
+    private static boolean isFavorite(PositionBits favorites, int position) {
+        return favorites != null && favorites.get(position);
+    }
+}
@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Immutable picture of the lineup of a television at one point in time: its
+ * channels, their favorite status and the tuned position. A snapshot never
+ * changes, so any number of threads can read it without locks while the
+ * television keeps being edited.
+ *
+ * @see Television#snapshot()
+ */
+public final class LineupSnapshot {
+
+    private final List<Channel> channels;
+    private final PositionBits favorites;
+    private final int currentPosition;
+
+    /**
+     * Constructs a snapshot. The list and the set must not be modified afterwards.
+     *
+     * @param channels        The channels, in position order, in an unmodifiable list.
+     * @param favorites       The positions of the favorite channels.
+     * @param currentPosition The tuned position, or -1 if none.
+     */
+    LineupSnapshot(List<Channel> channels, PositionBits favorites, int currentPosition) {
+        this.channels = channels;
+        this.favorites = favorites;
+        this.currentPosition = currentPosition;
+    }
+
+    /**
+     * Returns the channels of the lineup, in position order.
+     *
+     * @return An unmodifiable list of the channels.
+     */
+    public List<Channel> getChannels() {
+        return channels;
+    }
+
+    /**
+     * Returns the number of channels in the lineup.
+     *
+     * @return The number of channels.
+     */
+    public int getNumberOfChannels() {
+        return channels.size();
+    }
+
+    /**
+     * Retrieves the channel at the specified position.
+     *
+     * @param position The position of the channel to retrieve.
+     * @return The channel at the specified position, or {@code null} if the position is invalid.
+     */
+    public Channel getChannel(int position) {
+        if (position < 0 || position >= channels.size()) {
+            return null;
+        }
+        return channels.get(position);
+    }
+
+    /**
+     * Checks if the channel at the specified position was a favorite.
+     *
+     * @param position The position of the channel.
+     * @return {@code true} if the channel was a favorite, otherwise {@code false}.
+     */
+    public boolean isFavorite(int position) {
+        return position >= 0 && position < channels.size() && favorites.get(position);
+    }
+
+    /**
+     * Returns the position the television was tuned to.
+     *
+     * @return The tuned position, or -1 if the television was not tuned.
+     */
+    public int getCurrentPosition() {
+        return currentPosition;
+    }
+
+    /**
+     * Finds the position of a channel based on its name or partial name,
+     * ignoring case. Snapshots have no search index, so the names are scanned.
+     *
+     * @param nameQuery The name or partial name to search for.
+     * @return The position of the channel if found, otherwise -1.
+     */
+    public int findChannelPosition(String nameQuery) {
+        if (nameQuery == null || nameQuery.isBlank()) {
+            return -1;
+        }
+        String searchKey = Channel.toSearchKey(nameQuery);
+        int position = 0;
+        for (Channel channel : channels) {
+            if (channel.matches(searchKey)) {
+                return position;
+            }
+            position++;
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the list of channels in the same format as {@link Television#channelList()}.
+     *
+     * @param out The destination.
+     * @throws IOException If the destination fails.
+     */
+    public void channelList(Appendable out) throws IOException {
+        LineupFormat.appendChannelList(out, channels, favorites);
+    }
+
+    /**
+     * Generates the list of channels in the same format as {@link Television#channelList()}.
+     *
+     * @return A formatted string containing the list of channels.
+     */
+    public String channelList() {
+        return LineupFormat.render(channels.size() * 96, this::channelList);
+    }
+
+    /**
+     * Returns the same representation as {@link Television#toString()} had when
+     * the snapshot was taken.
+     *
+     * @return A formatted string representing the state of the television.
+     */
+    @Override
+    public String toString() {
+        return LineupFormat.status(channels, favorites, currentPosition);
+    }
+}
@@ -0,0 +1,313 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list of channels kept in a file mapped into memory, instead of
+ * on the heap. Opening a store only maps the file and checks its layout; a
+ * {@link Channel} is built from the mapped bytes each time {@link #get(int)}
+ * is called, while the frequency and name lookups read the bytes directly.
+ * <p>
+ * The file starts with a header (magic number, version, number of channels),
+ * followed by a table from frequency to position, one fixed-size record per
+ * channel and the names, both as written and case-folded for searches, in
+ * UTF-8. Use {@link #write(Television, Path)} to create one and
+ * {@link Television#Television(MappedChannelStore)} to use it as a lineup.
+ */
+public final class MappedChannelStore extends AbstractList<Channel> implements RandomAccess {
+
+    private static final int MAGIC = 0x54564D53; // "TVMS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int SLOTS = Channel.MAX_FREQUENCY - Channel.MIN_FREQUENCY + 1;
+
+    /**
+     * Record layout: frequency (short), flags (byte), padding (byte), name
+     * offset (int), name length (short, -1 for no name), folded name length
+     * (short) and folded name offset (int). Offsets are from the file start.
+     */
+    private static final int RECORD_SIZE = 16;
+    private static final int FAVORITE_FLAG = 1;
+
+    private static final int TABLE_OFFSET = HEADER_SIZE;
+    private static final int RECORDS_OFFSET = TABLE_OFFSET + SLOTS * 2;
+
+    private final ByteBuffer data;
+    private final int size;
+
+    private MappedChannelStore(ByteBuffer data, int size) {
+        this.data = data;
+        this.size = size;
+    }
+
+    /**
+     * Maps a store file created with {@link #write(Television, Path)}. The
+     * mapping stays valid after the file is closed, until the store is no
+     * longer used.
+     *
+     * @param file The file to map.
+     * @return The store.
+     * @throws IOException If the file cannot be read or is not a valid store.
+     */
+    public static MappedChannelStore open(Path file) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < RECORDS_OFFSET || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a channel store: " + file);
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.getInt(0) != MAGIC) {
+            throw new IOException("Not a channel store: " + file);
+        }
+        if (data.getInt(4) != VERSION) {
+            throw new IOException("Unsupported store version: " + data.getInt(4));
+        }
+        int size = data.getInt(8);
+        if (size < 0 || size > SLOTS || RECORDS_OFFSET + (long) size * RECORD_SIZE > data.capacity()) {
+            throw new IOException("Corrupt store: invalid number of channels.");
+        }
+        MappedChannelStore store = new MappedChannelStore(data, size);
+        store.check();
+        return store;
+    }
+
+    /**
+     * Checks that every record points inside the file, that the frequency
+     * table points back at it, and that every entry of the table points at a
+     * record with its frequency, so that lookups never read out of bounds.
+     */
+    private void check() throws IOException {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            int entry = data.getShort(TABLE_OFFSET + slot * 2);
+            if (entry != 0 && (entry < 0 || entry > size
+                    || data.getShort(record(entry - 1)) != slot + Channel.MIN_FREQUENCY)) {
+                throw new IOException("Corrupt store: invalid table entry for "
+                        + (slot + Channel.MIN_FREQUENCY) + " MHz.");
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            int record = record(i);
+            int slot = data.getShort(record) - Channel.MIN_FREQUENCY;
+            boolean valid = slot >= 0 && slot < SLOTS && Band.of(slot + Channel.MIN_FREQUENCY) != Band.UNKWOWN
+                    && data.getShort(TABLE_OFFSET + slot * 2) == i + 1
+                    && inBounds(data.getInt(record + 4), Math.max(data.getShort(record + 8), 0))
+                    && inBounds(data.getInt(record + 12), data.getShort(record + 10));
+            if (!valid) {
+                throw new IOException("Corrupt store: invalid channel at position " + i + ".");
+            }
+        }
+    }
+
+    private boolean inBounds(int offset, int length) {
+        return offset >= 0 && length >= 0 && (long) offset + length <= data.capacity();
+    }
+
+    /**
+     * Writes the channels of a television, and their favorite status, to a
+     * store file, replacing its content.
+     *
+     * @param television The television to write.
+     * @param file       The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(Television television, Path file) throws IOException {
+        LineupSnapshot snapshot = television.snapshot();
+        int size = snapshot.getNumberOfChannels();
+        byte[][] names = new byte[size][];
+        byte[][] folded = new byte[size][];
+        int length = RECORDS_OFFSET + size * RECORD_SIZE;
+        for (int i = 0; i < size; i++) {
+            String name = snapshot.getChannel(i).getName();
+            names[i] = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+            folded[i] = snapshot.getChannel(i).getSearchKey().getBytes(StandardCharsets.UTF_8);
+            if (Math.max(names[i] == null ? 0 : names[i].length, folded[i].length) > Short.MAX_VALUE) {
+                throw new IOException("Channel name too long for a store at position " + i + ".");
+            }
+            length += (names[i] == null ? 0 : names[i].length) + folded[i].length;
+        }
+
+        ByteBuffer out = ByteBuffer.allocateDirect(length);
+        out.putInt(MAGIC).putInt(VERSION).putInt(size);
+        int text = RECORDS_OFFSET + size * RECORD_SIZE;
+        for (int i = 0; i < size; i++) {
+            Channel channel = snapshot.getChannel(i);
+            out.putShort(TABLE_OFFSET + (channel.getFrequency() - Channel.MIN_FREQUENCY) * 2, (short) (i + 1));
+
+            int record = RECORDS_OFFSET + i * RECORD_SIZE;
+            out.putShort(record, (short) channel.getFrequency());
+            out.put(record + 2, (byte) (snapshot.isFavorite(i) ? FAVORITE_FLAG : 0));
+            out.putInt(record + 4, text);
+            if (names[i] != null) {
+                out.put(text, names[i]);
+                text += names[i].length;
+            }
+            out.putShort(record + 8, (short) (names[i] == null ? -1 : names[i].length));
+            out.putShort(record + 10, (short) folded[i].length);
+            out.putInt(record + 12, text);
+            out.put(text, folded[i]);
+            text += folded[i].length;
+        }
+
+        out.clear();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    private static int record(int index) {
+        return RECORDS_OFFSET + index * RECORD_SIZE;
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Builds the channel at the given position from the mapped bytes. Every
+     * call returns a new channel; the favorite status is given by
+     * {@link #isFavorite(int)}.
+     *
+     * @param index The position of the channel.
+     * @return A new channel with the stored name and frequency.
+     */
+    @Override
+    public Channel get(int index) {
+        return new Channel(getName(index), getFrequency(index));
+    }
+
+    /**
+     * Returns the name of the channel at the given position.
+     *
+     * @param index The position of the channel.
+     * @return The name of the channel.
+     */
+    public String getName(int index) {
+        checkIndex(index, size);
+        int record = record(index);
+        int length = data.getShort(record + 8);
+        if (length == -1) return null;
+        byte[] bytes = new byte[length];
+        data.get(data.getInt(record + 4), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the frequency of the channel at the given position.
+     *
+     * @param index The position of the channel.
+     * @return The frequency of the channel, in MHz.
+     */
+    public int getFrequency(int index) {
+        checkIndex(index, size);
+        return data.getShort(record(index));
+    }
+
+    /**
+     * Checks if the channel at the given position was a favorite when the
+     * store was written.
+     *
+     * @param index The position of the channel.
+     * @return {@code true} if the channel is a favorite, otherwise {@code false}.
+     */
+    public boolean isFavorite(int index) {
+        checkIndex(index, size);
+        return (data.get(record(index) + 2) & FAVORITE_FLAG) != 0;
+    }
+
+    /**
+     * Returns the position of the channel with the given frequency, read from
+     * the frequency table.
+     *
+     * @param frequency The frequency, in MHz.
+     * @return The position of the channel, or -1 if there is none.
+     */
+    public int indexOfFrequency(int frequency) {
+        if (frequency < Channel.MIN_FREQUENCY || frequency > Channel.MAX_FREQUENCY) {
+            return -1;
+        }
+        return data.getShort(TABLE_OFFSET + (frequency - Channel.MIN_FREQUENCY) * 2) - 1;
+    }
+
+    /**
+     * Returns the first position, from the given one on, of a channel whose
+     * case-folded name contains the query. The UTF-8 bytes of the query are
+     * compared with the stored folded names without decoding them.
+     *
+     * @param searchKey The query, already folded with {@link Channel#toSearchKey(String)}.
+     * @param from      The position to start from.
+     * @return The position found, or -1 if there is none.
+     */
+    public int find(String searchKey, int from) {
+        return find(searchKey.getBytes(StandardCharsets.UTF_8), from);
+    }
+
+    private int find(byte[] query, int from) {
+        for (int i = Math.max(from, 0); i < size; i++) {
+            int record = record(i);
+            if (contains(data.getInt(record + 12), data.getShort(record + 10), query)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean contains(int offset, int length, byte[] query) {
+        int last = offset + length - query.length;
+        for (int start = offset; start <= last; start++) {
+            int k = 0;
+            while (k < query.length && data.get(start + k) == query[k]) {
+                k++;
+            }
+            if (k == query.length) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the positions of the channels whose case-folded name contains
+     * the query, in ascending order, found as the iterator advances.
+     *
+     * @param searchKey The query, already folded with {@link Channel#toSearchKey(String)}.
+     * @return A lazy iterator over the matching positions.
+     */
+    public PrimitiveIterator.OfInt matches(String searchKey) {
+        byte[] query = searchKey.getBytes(StandardCharsets.UTF_8);
+        return new PrimitiveIterator.OfInt() {
+            private int next = find(query, 0);
+
+            @Override
+            public boolean hasNext() {
+                return next != -1;
+            }
+
+            @Override
+            public int nextInt() {
+                if (next == -1) {
+                    throw new NoSuchElementException();
+                }
+                int position = next;
+                next = find(query, position + 1);
+                return position;
+            }
+        };
+    }
+}
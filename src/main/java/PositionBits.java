@@ -0,0 +1,197 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Growable set of positions stored as bits in {@code long} words, with
+ * operations to insert and remove a position while shifting the following
+ * ones, like the elements of a list, a word at a time.
+ * <p>
+ * Only {@link #flip(int)} is safe to call from several threads at once: it
+ * never grows the set, so the caller must first make room for the position
+ * with {@link #ensureCapacity(int)}.
+ */
+final class PositionBits {
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private long[] words;
+
+    /**
+     * Constructs an empty set.
+     */
+    public PositionBits() {
+        words = new long[1];
+    }
+
+    /**
+     * Constructs a set with the same positions as another one.
+     *
+     * @param other The set to copy.
+     */
+    public PositionBits(PositionBits other) {
+        words = other.words.clone();
+    }
+
+    /**
+     * Makes room for the positions from 0 to {@code positions - 1}.
+     *
+     * @param positions The number of positions to make room for.
+     */
+    public void ensureCapacity(int positions) {
+        int required = (positions + 63) >>> 6;
+        if (required > words.length) {
+            words = Arrays.copyOf(words, Math.max(required, words.length * 2));
+        }
+    }
+
+    /**
+     * Checks if a position is in the set.
+     *
+     * @param position The position to check.
+     * @return {@code true} if the position is in the set, otherwise {@code false}.
+     */
+    public boolean get(int position) {
+        int w = position >>> 6;
+        return w < words.length && (words[w] & (1L << position)) != 0;
+    }
+
+    /**
+     * Adds or removes a position from the set.
+     *
+     * @param position The position.
+     * @param value    {@code true} to add the position, {@code false} to remove it.
+     */
+    public void set(int position, boolean value) {
+        ensureCapacity(position + 1);
+        if (value) {
+            words[position >>> 6] |= 1L << position;
+        } else {
+            words[position >>> 6] &= ~(1L << position);
+        }
+    }
+
+    /**
+     * Adds a position to the set if it is not there, or removes it otherwise.
+     * The word is updated atomically, so concurrent flips are never lost. The
+     * set is never grown, so the position must be within its capacity.
+     *
+     * @param position The position.
+     * @return {@code true} if the position is now in the set, otherwise {@code false}.
+     * @throws ArrayIndexOutOfBoundsException If the position is beyond the capacity.
+     */
+    public boolean flip(int position) {
+        long mask = 1L << position;
+        long previous = (long) WORDS.getAndBitwiseXor(words, position >>> 6, mask);
+        return (previous & mask) == 0;
+    }
+
+    /**
+     * Exchanges the membership of two positions.
+     *
+     * @param position1 The first position.
+     * @param position2 The second position.
+     */
+    public void swap(int position1, int position2) {
+        boolean value1 = get(position1);
+        set(position1, get(position2));
+        set(position2, value1);
+    }
+
+    /**
+     * Inserts a position, shifting every position from it on up by one.
+     *
+     * @param position The position to insert.
+     * @param value    {@code true} if the inserted position is in the set.
+     * @param size     The number of positions in use before the insertion.
+     */
+    public void insert(int position, boolean value, int size) {
+        ensureCapacity(size + 1);
+        int w = position >>> 6;
+        int last = size >>> 6;
+        for (int k = last; k > w; k--) {
+            words[k] = (words[k] << 1) | (words[k - 1] >>> 63);
+        }
+        long lowMask = (1L << position) - 1;
+        words[w] = (words[w] & lowMask) | ((words[w] & ~lowMask) << 1);
+        set(position, value);
+    }
+
+    /**
+     * Removes a position, shifting every following position down by one.
+     *
+     * @param position The position to remove.
+     */
+    public void remove(int position) {
+        int w = position >>> 6;
+        if (w >= words.length) return;
+        long lowMask = (1L << position) - 1;
+        words[w] = (words[w] & lowMask) | ((words[w] >>> 1) & ~lowMask);
+        for (int k = w; k < words.length - 1; k++) {
+            words[k] |= words[k + 1] << 63;
+            words[k + 1] >>>= 1;
+        }
+    }
+
+    /**
+     * Removes every position from the set.
+     */
+    public void clear() {
+        Arrays.fill(words, 0);
+    }
+
+    /**
+     * Returns the first position in the set that is equal to or after the given one.
+     *
+     * @param from The position to start from.
+     * @return The position found, or -1 if there is none.
+     */
+    public int nextSetBit(int from) {
+        if (from < 0) from = 0;
+        int w = from >>> 6;
+        if (w >= words.length) return -1;
+        long word = words[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == words.length) return -1;
+            word = words[w];
+        }
+    }
+
+    /**
+     * Returns the positions in the set, in ascending order, found as the stream
+     * is consumed.
+     *
+     * @return A lazy stream of the positions in the set.
+     */
+    public IntStream stream() {
+        return IntStream.iterate(nextSetBit(0), position -> position != -1,
+                position -> nextSetBit(position + 1));
+    }
+
+    /**
+     * Returns the last position in the set that is equal to or before the given one.
+     *
+     * @param from The position to start from.
+     * @return The position found, or -1 if there is none.
+     */
+    public int previousSetBit(int from) {
+        if (from < 0) return -1;
+        int w = from >>> 6;
+        if (w >= words.length) {
+            w = words.length - 1;
+            from = (w << 6) + 63;
+        }
+        long word = words[w] & (-1L >>> (63 - (from & 63)));
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+            }
+            if (w-- == 0) return -1;
+            word = words[w];
+        }
+    }
+}
@@ -1,9 +1,67 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
 import java.util.Scanner;
 
 public class Program {
     private static Scanner sc;
 
+    /**
+     * Everything the program prints goes through this buffer, which is only
+     * flushed before waiting for input and at exit.
+     */
+    private static final PrintWriter out =
+            new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16), false);
+
+    private static final String MENU = """
+            -- TV Menu --
+            1. Status
+            2. Channel list
+            3. Tune position
+            4. Toggle favorite
+            5. Add channel
+            6. Remove channel
+            7. Swap channels
+            8. Find channel
+            9. Apply factory settings
+            0. Turn off
+            --\s
+            """;
+
+    private static final int DEFAULT_PORT = 2323;
+
+    /**
+     * Starts the interactive menu or, with {@code --batch [file]}, runs the
+     * commands of the file, or of the standard input, without the menu. With
+     * {@code --server [port] [--shared]}, serves the same commands over TCP,
+     * giving each connection its own television unless {@code --shared}. With
+     * {@code --selector [port] [--shards n]}, serves them from a few event
+     * loops instead, sharing {@code n} televisions between the connections.
+     *
+     * @param args The command line arguments.
+     * @see BatchCommands
+     * @see TelevisionServer
+     * @see SelectorTelevisionServer
+     */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            runBatch(args.length > 1 ? args[1] : null);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--server")) {
+            runServer(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--selector")) {
+            runSelectorServer(args);
+            return;
+        }
+
         sc = new Scanner(System.in);
         boolean exit = false;
 
@@ -11,7 +69,7 @@ public class Program {
         Television television = new Television();
 
         while(!exit) {
-            System.out.println(menu());
+            out.println(MENU);
             int option = readInteger("?> ");
 
             switch (option) {
@@ -25,35 +83,98 @@ public class Program {
                 case 8 -> findChannel(television);
                 case 9 -> applyFactorySettings(television);
                 case 0 -> exit = true;
-                default -> System.out.println("[Invalid option. Try again...]");
+                default -> out.println("[Invalid option. Try again...]");
             }
 
         }
 
-        System.out.println("TV turned off. Bye!");
+        out.println("TV turned off. Bye!");
+        out.flush();
         sc.close();
     }
 
+    private static void runBatch(String file) {
+        Television television = new Television();
+        try (ReadableByteChannel in = file != null ? FileChannel.open(Path.of(file)) : Channels.newChannel(System.in)) {
+            new BatchCommands(television, out).run(in);
+        } catch (IOException e) {
+            System.err.println("[Error: " + e.getMessage() + "]");
+        } finally {
+            out.flush();
+        }
+    }
+
+    private static void runServer(String[] args) {
+        int port = DEFAULT_PORT;
+        boolean shared = false;
+        for (int i = 1; i < args.length; i++) {
+            long value = TextFormat.parseInt(args[i]);
+            if (args[i].equals("--shared")) {
+                shared = true;
+            } else if (value >= 0 && value <= 65535) {
+                port = (int) value;
+            } else {
+                System.err.println("Usage: Program --server [port] [--shared]");
+                return;
+            }
+        }
+        try (TelevisionServer server = new TelevisionServer(port, shared)) {
+            out.println("Listening on port " + server.getPort() + (shared ? " (shared television)" : ""));
+            out.flush();
+            server.serve();
+        } catch (IOException e) {
+            System.err.println("[Error: " + e.getMessage() + "]");
+        }
+    }
+
+    private static void runSelectorServer(String[] args) {
+        int port = DEFAULT_PORT;
+        int shards = 0;
+        for (int i = 1; i < args.length; i++) {
+            long value = TextFormat.parseInt(args[i]);
+            if (args[i].equals("--shards") && i + 1 < args.length && TextFormat.parseInt(args[i + 1]) > 0) {
+                shards = (int) TextFormat.parseInt(args[++i]);
+            } else if (value >= 0 && value <= 65535) {
+                port = (int) value;
+            } else {
+                System.err.println("Usage: Program --selector [port] [--shards n]");
+                return;
+            }
+        }
+        try (SelectorTelevisionServer server = new SelectorTelevisionServer(port, shards)) {
+            out.println("Listening on port " + server.getPort() + (shards > 0 ? " (" + shards + " shared televisions)" : ""));
+            out.flush();
+            server.serve();
+        } catch (IOException e) {
+            System.err.println("[Error: " + e.getMessage() + "]");
+        }
+    }
+
     private static void showStatus(Television tv) {
-        System.out.println(tv);
+        out.println(tv);
     }
 
     private static void showChannelList(Television tv) {
-        System.out.println("-> List of current channels:");
-        System.out.println(tv.channelList());
+        out.println("-> List of current channels:");
+        try {
+            tv.channelList(out);
+        } catch (IOException e) {
+            out.println("[Error]");
+        }
+        out.println();
     }
 
     private static void tunePosition(Television tv) {
         int pos = readInteger("Position?: ");
         boolean result = tv.tunePosition(pos);
 
-        System.out.println(result ? "[OK]" : "[Error]");
+        out.println(result ? "[OK]" : "[Error]");
     }
 
     private static void toggleFavorite(Television tv) {
         boolean result = tv.toggleFavorite();
 
-        System.out.println(result ? "[OK]" : "[Error]");
+        out.println(result ? "[OK]" : "[Error]");
     }
 
     private static void addChannel(Television tv) {
@@ -64,14 +185,14 @@ public class Program {
 
         boolean result = tv.addChannel(channel);
 
-        System.out.println(result ? "[OK]" : "[Error]");
+        out.println(result ? "[OK]" : "[Error]");
     }
 
     private static void removeChannel(Television tv) {
         int pos = readInteger("Position?: ");
         boolean result = tv.removeChannel(pos);
 
-        System.out.println(result ? "[OK]" : "[Error]");
+        out.println(result ? "[OK]" : "[Error]");
     }
 
     private static void swapChannels(Television tv) {
@@ -80,7 +201,7 @@ public class Program {
 
         boolean result = tv.swapChannels(pos1, pos2);
 
-        System.out.println(result ? "[OK]" : "[Error]");
+        out.println(result ? "[OK]" : "[Error]");
     }
 
     private static void findChannel(Television tv) {
@@ -88,62 +209,39 @@ public class Program {
 
         int foundPos = tv.findChannelPosition(query);
 
-        System.out.println(foundPos > -1 ? "-> Channel found at position " + foundPos : "-> Channel not found!");
+        out.println(foundPos > -1 ? "-> Channel found at position " + foundPos : "-> Channel not found!");
     }
 
     private static void applyFactorySettings(Television tv) {
         char answer = readChar("Are you sure (s/n)? ", 's', 'n');
         if(answer == 's') {
             tv.factorySettings();
-            System.out.println("[OK]");
+            out.println("[OK]");
         }
     }
 
-    private static String menu() {
-        StringBuilder sb = new StringBuilder();
-
-        sb.append("-- TV Menu --").append("\n");
-        sb.append("1. Status").append("\n");
-        sb.append("2. Channel list").append("\n");
-        sb.append("3. Tune position").append("\n");
-        sb.append("4. Toggle favorite").append("\n");
-        sb.append("5. Add channel").append("\n");
-        sb.append("6. Remove channel").append("\n");
-        sb.append("7. Swap channels").append("\n");
-        sb.append("8. Find channel").append("\n");
-        sb.append("9. Apply factory settings").append("\n");
-        sb.append("0. Turn off").append("\n");
-        sb.append("-- ").append("\n");
-
-        return sb.toString();
-    }
-
     private static int readInteger(String prompt) {
-        boolean ok;
-        int value = 0;
-        do {
-            System.out.print(prompt);
-            String line = sc.nextLine();
-            try {
-                value = Integer.parseInt(line);
-                ok = true;
-            } catch(Exception e) {
-                System.out.println("[Expecting a number. Try again...]");
-                ok = false;
+        while (true) {
+            out.print(prompt);
+            out.flush();
+            long value = TextFormat.parseInt(sc.nextLine());
+            if (value != TextFormat.NOT_A_NUMBER) {
+                return (int) value;
             }
-        } while(!ok);
-
-        return value;
+            out.println("[Expecting a number. Try again...]");
+        }
     }
 
     private static String readString(String prompt) {
-        System.out.print(prompt);
+        out.print(prompt);
+        out.flush();
         return sc.nextLine();
     }
 
     private static char readChar(String prompt, char... validChars) {
         while (true) {
-            System.out.print(prompt);
+            out.print(prompt);
+            out.flush();
             String input = sc.nextLine().trim();
 
             if (input.length() == 1) {
@@ -155,7 +253,7 @@ public class Program {
                 }
             }
 
-            System.out.println("Invalid input. Please enter one of the following characters: "
+            out.println("Invalid input. Please enter one of the following characters: "
                     + String.valueOf(validChars));
         }
     }
@@ -0,0 +1,466 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * TCP server for the commands of {@link BatchCommands}, like
+ * {@link TelevisionServer}, but served by a few event loops instead of a
+ * thread per connection. Each loop owns a {@link Selector} and a thread, and
+ * every connection stays on one loop for its whole life, so the televisions
+ * it drives are only ever touched by that thread and need no locks.
+ * <p>
+ * Connections are numbered as they are accepted. Without shards, each one
+ * gets its own {@link Television}; with shards, connection {@code n} drives
+ * television {@code n % shards} and is placed on the loop that owns that
+ * television, so connections of the same shard see each other's changes.
+ * <p>
+ * Lines are framed and parsed straight from one direct buffer per loop; only
+ * a line split between two reads is copied, to a small buffer of its
+ * connection. Answers are encoded to UTF-8 as they are appended, into direct
+ * buffers taken from a pool of the loop, and all the buffers of a connection
+ * are sent with one gathering write. A connection whose answers are not read
+ * is not read either until they are sent.
+ */
+public final class SelectorTelevisionServer implements AutoCloseable {
+
+    private static final int MAX_LOOPS = 4;
+    private static final int INPUT_SIZE = 64 * 1024;
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int POOLED_CHUNKS = 64;
+
+    /**
+     * Longest line accepted; a connection sending a longer one is closed.
+     */
+    private static final int MAX_LINE = 64 * 1024;
+
+    private final ServerSocketChannel server;
+    private final Loop[] loops;
+
+    /**
+     * Televisions shared by the connections of each shard, or {@code null} to
+     * give each connection its own. Shard {@code s} is only used by loop
+     * {@code s % loops.length}.
+     */
+    private final Television[] shards;
+
+    private long nextSession;
+
+    /**
+     * Starts listening on the given port of every local address, with one loop
+     * per available processor, up to {@value #MAX_LOOPS}.
+     *
+     * @param port   The port, or 0 for any free one.
+     * @param shards The number of televisions shared by the connections, or 0
+     *               to give each connection its own.
+     * @throws IOException If the port cannot be bound.
+     */
+    public SelectorTelevisionServer(int port, int shards) throws IOException {
+        this(port, Math.min(Runtime.getRuntime().availableProcessors(), MAX_LOOPS), shards);
+    }
+
+    /**
+     * Starts listening on the given port of every local address.
+     *
+     * @param port   The port, or 0 for any free one.
+     * @param loops  The number of event loops, each with its own thread.
+     * @param shards The number of televisions shared by the connections, or 0
+     *               to give each connection its own.
+     * @throws IOException If the port cannot be bound.
+     */
+    public SelectorTelevisionServer(int port, int loops, int shards) throws IOException {
+        if (loops < 1) {
+            throw new IllegalArgumentException("At least one loop is needed.");
+        }
+        if (shards < 0) {
+            throw new IllegalArgumentException("Negative number of shards.");
+        }
+        this.loops = new Loop[loops];
+        for (int i = 0; i < loops; i++) {
+            this.loops[i] = new Loop();
+        }
+        if (shards > 0) {
+            this.shards = new Television[shards];
+            Arrays.setAll(this.shards, i -> new Television());
+        } else {
+            this.shards = null;
+        }
+        this.server = ServerSocketChannel.open();
+        this.server.bind(new InetSocketAddress(port), 1024);
+        this.server.configureBlocking(false);
+        this.server.register(this.loops[0].selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return The local port.
+     * @throws IOException If the server is closed.
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Serves connections until the server is closed. The first loop, which
+     * also accepts the connections, runs on the calling thread and the others
+     * on daemon threads of their own.
+     */
+    public void serve() {
+        for (int i = 1; i < loops.length; i++) {
+            Thread thread = new Thread(loops[i], "television-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        loops[0].run();
+    }
+
+    /**
+     * Stops accepting connections and closes the ones still open.
+     *
+     * @throws IOException If the server socket cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (Loop loop : loops) {
+            loop.selector.wakeup();
+        }
+    }
+
+    /**
+     * Accepts the pending connections and hands each one to its loop. Only
+     * called by the first loop.
+     */
+    private void accept() throws IOException {
+        SocketChannel client;
+        while ((client = server.accept()) != null) {
+            long session = nextSession++;
+            Loop loop;
+            Television television;
+            if (shards == null) {
+                loop = loops[(int) (session % loops.length)];
+                television = new Television();
+            } else {
+                int shard = (int) (session % shards.length);
+                loop = loops[shard % loops.length];
+                television = shards[shard];
+            }
+            client.configureBlocking(false);
+            loop.accepted.add(new Session(client, television, loop));
+            if (loop != loops[0]) {
+                loop.selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Event loop serving its connections on a single thread.
+     */
+    private final class Loop implements Runnable {
+        private final Selector selector;
+        private final Queue<Session> accepted = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer input = ByteBuffer.allocateDirect(INPUT_SIZE);
+        private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+
+        private Loop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (server.isOpen()) {
+                    register();
+                    selector.select(this::handle);
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                // The server is being closed
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    closeQuietly(key);
+                }
+                Session session;
+                while ((session = accepted.poll()) != null) {
+                    closeQuietly(session.client);
+                }
+                closeQuietly(selector);
+            }
+        }
+
+        private void register() throws IOException {
+            Session session;
+            while ((session = accepted.poll()) != null) {
+                session.key = session.client.register(selector, SelectionKey.OP_READ, session);
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            try {
+                if (key.isAcceptable()) {
+                    accept();
+                    register();
+                    return;
+                }
+                Session session = (Session) key.attachment();
+                if (key.isWritable()) {
+                    send(session);
+                } else if (key.isReadable()) {
+                    receive(session);
+                }
+            } catch (IOException e) {
+                // The client went away, nothing left to answer
+                closeQuietly(key);
+            }
+        }
+
+        /**
+         * Reads what the client sent and runs every complete line, straight
+         * from the input buffer, then sends the answers.
+         */
+        private void receive(Session session) throws IOException {
+            input.clear();
+            if (session.client.read(input) == -1) {
+                // Like the end of a script, a last line without a break still runs
+                if (session.partial != null) {
+                    session.commands.execute(session.partial, 0, session.partial.position());
+                    session.partial = null;
+                }
+                session.quit = true;
+            }
+            int start = 0;
+            int limit = input.position();
+            for (int i = 0; i < limit && !session.quit; i++) {
+                if (input.get(i) == '\n') {
+                    run(session, start, i);
+                    start = i + 1;
+                }
+            }
+            if (!session.quit && start < limit) {
+                keep(session, start, limit);
+            }
+            send(session);
+        }
+
+        private void run(Session session, int start, int end) throws IOException {
+            if (session.partial == null) {
+                session.quit = !session.commands.execute(input, start, end);
+            } else {
+                keep(session, start, end);
+                ByteBuffer line = session.partial;
+                session.partial = null;
+                session.quit = !session.commands.execute(line, 0, line.position());
+            }
+        }
+
+        /**
+         * Copies the start of a line split between two reads to the buffer of
+         * its connection, until the rest arrives.
+         */
+        private void keep(Session session, int start, int end) throws IOException {
+            ByteBuffer partial = session.partial;
+            int needed = (partial == null ? 0 : partial.position()) + end - start;
+            if (needed > MAX_LINE) {
+                throw new IOException("Line too long.");
+            }
+            if (partial == null || partial.remaining() < end - start) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.min(2 * needed, MAX_LINE));
+                session.partial = partial == null ? larger : larger.put(partial.flip());
+            }
+            session.partial.put(session.partial.position(), input, start, end - start);
+            session.partial.position(session.partial.position() + end - start);
+        }
+
+        /**
+         * Writes the pending answers. Until they are all sent the connection
+         * waits for the client to accept them instead of reading more.
+         */
+        private void send(Session session) throws IOException {
+            if (!session.answers.write(session.client)) {
+                session.key.interestOps(SelectionKey.OP_WRITE);
+            } else if (session.quit) {
+                closeQuietly(session.key);
+            } else {
+                session.key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        private ByteBuffer takeChunk() {
+            ByteBuffer chunk = pool.poll();
+            return chunk != null ? chunk : ByteBuffer.allocateDirect(CHUNK_SIZE);
+        }
+
+        private void releaseChunk(ByteBuffer chunk) {
+            if (pool.size() < POOLED_CHUNKS) {
+                pool.push(chunk.clear());
+            }
+        }
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        if (key.attachment() instanceof Session session) {
+            session.answers.release();
+        }
+        closeQuietly(key.channel());
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Nothing left to do with it
+        }
+    }
+
+    /**
+     * State of a connection, attached to its selection key.
+     */
+    private static final class Session {
+        private final SocketChannel client;
+        private final Answers answers;
+        private final BatchCommands commands;
+        private SelectionKey key;
+
+        /**
+         * Start of a line split between two reads, or {@code null} if none.
+         */
+        private ByteBuffer partial;
+        private boolean quit;
+
+        private Session(SocketChannel client, Television television, Loop loop) {
+            this.client = client;
+            this.answers = new Answers(loop);
+            this.commands = new BatchCommands(television, answers, 0);
+        }
+    }
+
+    /**
+     * Answers of a connection, encoded to UTF-8 as they are appended into
+     * direct buffers of its loop, which go back to the pool once sent.
+     */
+    private static final class Answers implements Appendable {
+        private final Loop loop;
+        private ByteBuffer[] chunks = new ByteBuffer[2];
+        private int count;
+
+        /**
+         * Whether the last chunk is still being filled, rather than flipped
+         * for writing.
+         */
+        private boolean filling;
+
+        /**
+         * High surrogate waiting for its low surrogate, or 0 if none.
+         */
+        private char high;
+
+        private Answers(Loop loop) {
+            this.loop = loop;
+        }
+
+        @Override
+        public Appendable append(CharSequence text) {
+            return append(text, 0, text.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence text, int start, int end) {
+            for (int i = start; i < end; i++) {
+                append(text.charAt(i));
+            }
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            ByteBuffer chunk = reserve(4);
+            if (high != 0) {
+                if (Character.isLowSurrogate(c)) {
+                    int codePoint = Character.toCodePoint(high, c);
+                    high = 0;
+                    chunk.put((byte) (0xF0 | codePoint >> 18))
+                            .put((byte) (0x80 | codePoint >> 12 & 0x3F))
+                            .put((byte) (0x80 | codePoint >> 6 & 0x3F))
+                            .put((byte) (0x80 | codePoint & 0x3F));
+                    return this;
+                }
+                high = 0;
+                chunk.put((byte) '?');
+            }
+            if (c < 0x80) {
+                chunk.put((byte) c);
+            } else if (c < 0x800) {
+                chunk.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c)) {
+                high = c;
+            } else if (Character.isLowSurrogate(c)) {
+                chunk.put((byte) '?');
+            } else {
+                chunk.put((byte) (0xE0 | c >> 12))
+                        .put((byte) (0x80 | c >> 6 & 0x3F))
+                        .put((byte) (0x80 | c & 0x3F));
+            }
+            return this;
+        }
+
+        /**
+         * Returns a chunk being filled with room for the given bytes, taking a
+         * new one from the pool if needed.
+         */
+        private ByteBuffer reserve(int bytes) {
+            if (filling && chunks[count - 1].remaining() >= bytes) {
+                return chunks[count - 1];
+            }
+            if (filling) {
+                chunks[count - 1].flip();
+            }
+            if (count == chunks.length) {
+                chunks = Arrays.copyOf(chunks, count * 2);
+            }
+            filling = true;
+            return chunks[count++] = loop.takeChunk();
+        }
+
+        /**
+         * Sends the pending chunks with one gathering write and gives back the
+         * ones sent.
+         *
+         * @return {@code true} if every answer was sent.
+         */
+        private boolean write(SocketChannel client) throws IOException {
+            if (count == 0) return true;
+            if (filling) {
+                chunks[count - 1].flip();
+                filling = false;
+            }
+            client.write(chunks, 0, count);
+            int sent = 0;
+            while (sent < count && !chunks[sent].hasRemaining()) {
+                loop.releaseChunk(chunks[sent]);
+                sent++;
+            }
+            System.arraycopy(chunks, sent, chunks, 0, count - sent);
+            Arrays.fill(chunks, count - sent, count, null);
+            count -= sent;
+            return count == 0;
+        }
+
+        private void release() {
+            for (int i = 0; i < count; i++) {
+                loop.releaseChunk(chunks[i]);
+                chunks[i] = null;
+            }
+            count = 0;
+            filling = false;
+        }
+    }
+}
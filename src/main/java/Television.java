@@ -1,39 +1,139 @@
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 /**
  * Represents a television with a list of channels. Provides functionalities
  * to add, remove, and manage channels, including tuning to specific channels,
  * swapping them, and toggling favorites.
+ * <p>
+ * The favorite status of the channels is kept by the television, see
+ * {@link #isFavorite(int)}: the channels themselves are never changed, so the
+ * same channels can be shared by many televisions.
  */
 public class Television {
 
+    private List<Channel> channelList;
+
     /**
-     * Factory default channels for reference. These channels are used to reset
-     * the television to its factory settings.
+     * Current and previously tuned positions, packed in a single value so that
+     * tuning operations update both atomically, without locking. Either one is
+     * -1 when there is no such channel.
      */
-    private static Channel[] factoryChannels = {
-            new Channel("RTP 1 HD", 54),
-            new Channel("CM TV HD", 62),
-            new Channel("SPORT.TV + HD", 78),
-            new Channel("Canal 11 HD", 86),
-            new Channel("Globo Portugal HD", 174),
-            new Channel("TVI Reality HD", 182),
-            new Channel("SIC Mulher HD", 190),
-            new Channel("SIC Caras HD", 198),
-            new Channel("SIC Radical HD", 206),
-            new Channel("Discovery Channel HD", 470)
-    };
+    private final AtomicLong tuning;
 
-    private List<Channel> channelList;
-    private int currentPosition;
+    /**
+     * Channels indexed by frequency, kept in sync with {@code channelList}.
+     * The channel with frequency {@code f} is stored at {@code f - Channel.MIN_FREQUENCY}.
+     */
+    private Channel[] frequencyIndex;
+
+    /**
+     * Substring index over the channel names, kept in sync with {@code channelList}.
+     */
+    private ChannelSearchIndex searchIndex;
+
+    /**
+     * Whether both indexes are still the ones shared by {@link FactoryLineup},
+     * which must be copied before they are changed.
+     */
+    private boolean sharedIndexes;
+
+    /**
+     * Mapped store the channels are read from, or {@code null} if the lineup
+     * is kept in {@code channelList} and the indexes. While it is set, the
+     * store is {@code channelList} and the indexes are not built.
+     */
+    private MappedChannelStore source;
+
+    /**
+     * The storage, if it is a {@link ChannelTable}, or {@code null}. A table
+     * answers lookups by frequency and by name from its own columns, so the
+     * indexes are not built and no channel object is kept.
+     */
+    private final ChannelTable table;
+
+    /**
+     * Positions of the favorite channels, kept in sync with {@code channelList}.
+     */
+    private PositionBits favorites;
+
+    /**
+     * Number of changes made so far to the channels or their favorite status.
+     */
+    private final AtomicLong lineupVersion;
+
+    /**
+     * Last rendered status of the television, valid while the lineup version
+     * and the tuning state it was rendered from do not change.
+     */
+    private volatile Status status;
+
+    /**
+     * Last version of the lineup published for snapshots.
+     */
+    private volatile Published published;
 
     /**
      * Constructs a new Television instance with factory default channels.
      */
     public Television() {
-        channelList = new ArrayList<>();
-        factorySettings();
+        this(new ArrayList<>());
+    }
+
+    /**
+     * Constructs a new Television instance with factory default channels, kept
+     * in the given list. An {@link IndexedChannelList} moves the channels
+     * themselves in O(log n) on a positional insertion or removal, at the cost
+     * of O(log n) positional reads; the edit as a whole still shifts the
+     * favorite bits, in O(n / 64), and the positions in the search index, in
+     * the number of indexed n-grams. A {@link ChannelTable} stores the channels
+     * by column instead of as objects, without the frequency and search
+     * indexes. Any previous content of the list is discarded.
+     *
+     * @param storage The list that stores the channels of the television.
+     */
+    public Television(List<Channel> storage) {
+        channelList = storage;
+        table = storage instanceof ChannelTable columns ? columns : null;
+        tuning = new AtomicLong(tuningState(-1, -1));
+        lineupVersion = new AtomicLong();
+        favorites = new PositionBits();
+        resetChannels();
+    }
+
+    /**
+     * Constructs a new Television instance that reads its channels, and their
+     * favorite status, from a mapped store. Lookups by position, frequency and
+     * name go straight to the mapped bytes, so no channel is kept on the heap
+     * until the lineup is first edited, when the channels are copied to an
+     * {@code ArrayList}.
+     *
+     * @param source The store with the channels of the television.
+     */
+    public Television(MappedChannelStore source) {
+        channelList = source;
+        this.source = source;
+        this.table = null;
+        tuning = new AtomicLong(tuningState(-1, -1));
+        lineupVersion = new AtomicLong();
+        favorites = new PositionBits();
+        favorites.ensureCapacity(source.size());
+        for (int i = 0; i < source.size(); i++) {
+            favorites.set(i, source.isFavorite(i));
+        }
     }
 
     /**
@@ -43,7 +143,103 @@ public class Television {
      * @return {@code true} if the position is valid, otherwise {@code false}.
      */
     private boolean isPositionValid(int position) {
-        return position >= 0 && position < getNumberOfChannels();
+        return position >= 0 && position < channelList.size();
+    }
+
+    /**
+     * Checks if a channel with the frequency of the given slot is in the lineup.
+     *
+     * @param slot The slot of the frequency, not -1.
+     * @return {@code true} if the frequency is in use, otherwise {@code false}.
+     */
+    private boolean isFrequencyUsed(int slot) {
+        if (source != null) {
+            return source.indexOfFrequency(slot + Channel.MIN_FREQUENCY) != -1;
+        }
+        if (table != null) {
+            return table.indexOfFrequency(slot + Channel.MIN_FREQUENCY) != -1;
+        }
+        return frequencyIndex[slot] != null;
+    }
+
+    /**
+     * Returns the slot of the given frequency in {@code frequencyIndex}.
+     *
+     * @param frequency The frequency, in MHz.
+     * @return The slot of the frequency, or -1 if the frequency is out of range.
+     */
+    private int frequencySlot(int frequency) {
+        if (frequency < Channel.MIN_FREQUENCY || frequency > Channel.MAX_FREQUENCY) {
+            return -1;
+        }
+        return frequency - Channel.MIN_FREQUENCY;
+    }
+
+    /**
+     * Starts a new version of the lineup, after a change to the channels or
+     * their favorite status. The rendered status and the published snapshot of
+     * the previous version are no longer used.
+     */
+    private void lineupChanged() {
+        lineupVersion.incrementAndGet();
+    }
+
+    /**
+     * Makes sure the channels and the indexes belong to this television before
+     * changing them. A {@link ChannelTable} storage has no indexes, so the
+     * callers leave them alone when {@code table} is set.
+     */
+    private void ownLineup() {
+        if (source != null) {
+            channelList = new ArrayList<>(source);
+            frequencyIndex = new Channel[Channel.MAX_FREQUENCY - Channel.MIN_FREQUENCY + 1];
+            searchIndex = new ChannelSearchIndex();
+            for (Channel channel : channelList) {
+                frequencyIndex[frequencySlot(channel.getFrequency())] = channel;
+                searchIndex.add(channel);
+            }
+            source = null;
+        } else if (sharedIndexes) {
+            frequencyIndex = frequencyIndex.clone();
+            searchIndex = new ChannelSearchIndex(searchIndex);
+            sharedIndexes = false;
+        }
+    }
+
+    private static long tuningState(int current, int previous) {
+        return ((long) current << 32) | (previous & 0xFFFFFFFFL);
+    }
+
+    private static int currentOf(long state) {
+        return (int) (state >> 32);
+    }
+
+    private static int previousOf(long state) {
+        return (int) state;
+    }
+
+    /**
+     * Returns the position of the tuned channel.
+     *
+     * @return The position of the tuned channel, or -1 if the television is not tuned.
+     */
+    int currentPosition() {
+        return currentOf(tuning.get());
+    }
+
+    /**
+     * Moves the current and previous positions after the list changed.
+     *
+     * @param remap Function that gives the new position of a channel from its old
+     *              one, or -1 if the channel is gone. It is not called for -1.
+     */
+    private void remapTuning(IntUnaryOperator remap) {
+        tuning.updateAndGet(state -> {
+            int current = currentOf(state);
+            int previous = previousOf(state);
+            return tuningState(current == -1 ? -1 : remap.applyAsInt(current),
+                    previous == -1 ? -1 : remap.applyAsInt(previous));
+        });
     }
 
     /**
@@ -52,7 +248,7 @@ public class Television {
      * @return {@code true} if a channel is currently tuned, otherwise {@code false}.
      */
     public boolean isTuned() {
-        return currentPosition != -1;
+        return currentPosition() != -1;
     }
 
     /**
@@ -71,51 +267,379 @@ public class Television {
      * @return {@code true} if the channel was successfully tuned, otherwise {@code false}.
      */
     public boolean tunePosition(int position) {
+        return tune(position);
+    }
+
+    /**
+     * Tunes the television to the given position, remembering the current one
+     * as the previous position.
+     *
+     * @param position The position of the channel to tune to.
+     * @return {@code true} if the channel was successfully tuned, otherwise {@code false}.
+     */
+    private boolean tune(int position) {
         if (!isPositionValid(position)) return false;
-        currentPosition = position;
+        long state;
+        do {
+            state = tuning.get();
+            if (currentOf(state) == position) return true;
+        } while (!tuning.compareAndSet(state, tuningState(position, currentOf(state))));
+        return true;
+    }
+
+    /**
+     * Tunes the television {@code delta} positions after the current one, or
+     * before it if {@code delta} is negative, wrapping around the ends of the
+     * list. If the television is not tuned, moving forward starts before the
+     * first channel and moving backward starts after the last one.
+     * <p>
+     * The move is applied atomically to the latest position, so concurrent
+     * calls, like repeated presses of a remote control, all take effect.
+     *
+     * @param delta The number of positions to move.
+     * @return {@code true} if a channel was tuned, otherwise {@code false}.
+     */
+    public boolean tuneRelative(int delta) {
+        return tuneBy(delta);
+    }
+
+    private boolean tuneBy(int delta) {
+        long state;
+        int target;
+        do {
+            int size = channelList.size();
+            state = tuning.get();
+            int current = currentOf(state);
+            if (size == 0 || delta == 0 && current == -1) return false;
+            int from = current != -1 ? current : (delta > 0 ? -1 : size);
+            target = Math.floorMod((long) from + delta, size);
+            if (target == current) return true;
+        } while (!tuning.compareAndSet(state, tuningState(target, currentOf(state))));
         return true;
     }
 
     /**
-     * Toggles the favorite status of the currently tuned channel.
+     * Tunes the television to the next channel, wrapping around to the first one.
+     *
+     * @return {@code true} if a channel was tuned, otherwise {@code false}.
+     */
+    public boolean channelUp() {
+        return tuneBy(1);
+    }
+
+    /**
+     * Tunes the television to the previous channel, wrapping around to the last one.
+     *
+     * @return {@code true} if a channel was tuned, otherwise {@code false}.
+     */
+    public boolean channelDown() {
+        return tuneBy(-1);
+    }
+
+    /**
+     * Tunes the television back to the channel it was tuned to before the
+     * current one, like the "last channel" button of a remote control. Calling
+     * it again returns to the current channel.
+     *
+     * @return {@code true} if the previous channel was tuned, otherwise {@code false}.
+     */
+    public boolean previousChannel() {
+        long state;
+        do {
+            state = tuning.get();
+            if (previousOf(state) == -1) return false;
+        } while (!tuning.compareAndSet(state, tuningState(previousOf(state), currentOf(state))));
+        return true;
+    }
+
+    /**
+     * Toggles the favorite status of the currently tuned channel. Only the
+     * television keeps the new status, the channel itself is not changed.
      *
      * @return {@code true} if the favorite status was successfully toggled, otherwise {@code false}.
      */
     public boolean toggleFavorite() {
-        if (!isTuned()) return false;
-        channelList.get(currentPosition).toggleFavorite();
+        int position = currentPosition();
+        if (position == -1) return false;
+        favorites.flip(position);
+        lineupChanged();
         return true;
     }
 
+    /**
+     * Checks if the channel at the specified position is a favorite.
+     *
+     * @param position The position of the channel.
+     * @return {@code true} if the channel is a favorite, otherwise {@code false}.
+     */
+    public boolean isFavorite(int position) {
+        return isPositionValid(position) && favorites.get(position);
+    }
+
+    /**
+     * Tunes the television to the next favorite channel after the current one,
+     * wrapping around to the start of the list. If the television is not tuned,
+     * the search starts at the first channel.
+     *
+     * @return {@code true} if a favorite channel was tuned, otherwise {@code false}.
+     */
+    public boolean nextFavorite() {
+        int position = favorites.nextSetBit(currentPosition() + 1);
+        if (position == -1) {
+            position = favorites.nextSetBit(0);
+        }
+        return position != -1 && tune(position);
+    }
+
+    /**
+     * Tunes the television to the previous favorite channel before the current
+     * one, wrapping around to the end of the list. If the television is not tuned,
+     * the search starts at the last channel.
+     *
+     * @return {@code true} if a favorite channel was tuned, otherwise {@code false}.
+     */
+    public boolean previousFavorite() {
+        int last = channelList.size() - 1;
+        int current = currentPosition();
+        int position = favorites.previousSetBit(current != -1 ? current - 1 : last);
+        if (position == -1) {
+            position = favorites.previousSetBit(last);
+        }
+        return position != -1 && tune(position);
+    }
+
+    /**
+     * Returns the positions of the favorite channels, in ascending order. The
+     * positions are found a word of bits at a time as the stream is consumed,
+     * so it must be consumed before the television is modified.
+     *
+     * @return A lazy stream of the positions of the favorite channels.
+     */
+    public IntStream favorites() {
+        return favorites.stream();
+    }
+
     /**
      * Adds a new channel to the television.
      * There cannot exist channels with the same frequency.
+     * The channel starts as not a favorite.
      *
      * @param channel The channel to add.
      * @return {@code true} if the channel was successfully added, otherwise {@code false}.
      */
     public boolean addChannel(Channel channel) {
         if (channel == null) return false;
-        // TODO: check overlapping frequencies
+        int slot = frequencySlot(channel.getFrequency());
+        if (slot == -1 || isFrequencyUsed(slot)) return false;
+        ownLineup();
         channelList.add(channel);
+        favorites.ensureCapacity(channelList.size());
+        if (table == null) {
+            frequencyIndex[slot] = channel;
+            searchIndex.add(channel);
+        }
+        lineupChanged();
         return true;
     }
 
     /**
-     * Removes the channel at the specified position.
+     * Adds several channels at once, all or nothing. The whole batch is checked
+     * first, in a single pass, against the existing frequencies and against
+     * itself; if any channel is rejected nothing is added. Otherwise the storage
+     * is grown once and every channel is appended in the given order.
+     *
+     * @param channels The channels to add.
+     * @return The indexes, within the batch, of the rejected channels: {@code null}
+     *         channels and channels whose frequency is already in use. The set is
+     *         empty if every channel was added.
+     */
+    public BitSet addChannels(Collection<Channel> channels) {
+        if (channels == null) return new BitSet();
+        return addBatch(channels.toArray(new Channel[0]));
+    }
+
+    /**
+     * Adds several channels at once, all or nothing.
+     *
+     * @param channels The channels to add.
+     * @return The indexes, within the batch, of the rejected channels; empty if
+     *         every channel was added.
+     * @see #addChannels(Collection)
+     */
+    public BitSet addChannels(Channel[] channels) {
+        return addBatch(channels);
+    }
+
+    private BitSet addBatch(Channel[] channels) {
+        BitSet rejected = new BitSet();
+        if (channels == null || channels.length == 0) return rejected;
+
+        boolean[] claimed = new boolean[Channel.MAX_FREQUENCY - Channel.MIN_FREQUENCY + 1];
+        for (int i = 0; i < channels.length; i++) {
+            Channel channel = channels[i];
+            int slot = channel == null ? -1 : frequencySlot(channel.getFrequency());
+            if (slot == -1 || isFrequencyUsed(slot) || claimed[slot]) {
+                rejected.set(i);
+            } else {
+                claimed[slot] = true;
+            }
+        }
+        if (!rejected.isEmpty()) return rejected;
+
+        ownLineup();
+        if (channelList instanceof ArrayList<Channel> list) {
+            list.ensureCapacity(list.size() + channels.length);
+        }
+        channelList.addAll(Arrays.asList(channels));
+        favorites.ensureCapacity(channelList.size());
+        if (table == null) {
+            for (Channel channel : channels) {
+                frequencyIndex[frequencySlot(channel.getFrequency())] = channel;
+                searchIndex.add(channel);
+            }
+        }
+        lineupChanged();
+        return rejected;
+    }
+
+    /**
+     * Inserts a new channel at the specified position, shifting the following
+     * channels. There cannot exist channels with the same frequency. If the
+     * television is tuned to a following channel, it stays tuned to it.
+     *
+     * @param position The position of the new channel, from 0 to the number of channels.
+     * @param channel  The channel to add.
+     * @return {@code true} if the channel was successfully added, otherwise {@code false}.
+     */
+    public boolean addChannel(int position, Channel channel) {
+        if (channel == null || position < 0 || position > channelList.size()) return false;
+        int slot = frequencySlot(channel.getFrequency());
+        if (slot == -1 || isFrequencyUsed(slot)) return false;
+        ownLineup();
+        channelList.add(position, channel);
+        if (table == null) {
+            frequencyIndex[slot] = channel;
+            searchIndex.insert(position, channel);
+        }
+        favorites.insert(position, false, channelList.size() - 1);
+        remapTuning(p -> p >= position ? p + 1 : p);
+        lineupChanged();
+        return true;
+    }
+
+    /**
+     * Removes the channel at the specified position. If the television is tuned
+     * to a following channel, it stays tuned to it.
      *
      * @param position The position of the channel to remove.
      * @return {@code true} if the channel was successfully removed, otherwise {@code false}.
      */
     public boolean removeChannel(int position) {
         if (!isPositionValid(position)) return false;
-        if (currentPosition == position) {
-            currentPosition = -1;
+        ownLineup();
+        remapTuning(p -> p == position ? -1 : p > position ? p - 1 : p);
+        Channel removed = channelList.remove(position);
+        if (table == null) {
+            frequencyIndex[frequencySlot(removed.getFrequency())] = null;
+            searchIndex.remove(position);
         }
-        channelList.remove(position);
+        favorites.remove(position);
+        lineupChanged();
         return true;
     }
 
+    /**
+     * Removes the channels at the specified positions in a single pass.
+     * Invalid and repeated positions are ignored. If the television is tuned to
+     * a channel that is kept, it stays tuned to it, otherwise it becomes untuned.
+     *
+     * @param positions The positions of the channels to remove.
+     * @return The number of channels removed.
+     */
+    public int removeChannels(int... positions) {
+        if (positions == null) return 0;
+        BitSet marked = new BitSet(channelList.size());
+        for (int position : positions) {
+            if (isPositionValid(position)) {
+                marked.set(position);
+            }
+        }
+        return compact(marked);
+    }
+
+    /**
+     * Removes all channels that satisfy the given predicate, in a single pass.
+     * If the television is tuned to a channel that is kept, it stays tuned to it,
+     * otherwise it becomes untuned.
+     *
+     * @param filter The predicate that selects the channels to remove.
+     * @return The number of channels removed.
+     */
+    public int removeIf(Predicate<Channel> filter) {
+        if (filter == null) return 0;
+        BitSet marked = new BitSet(channelList.size());
+        int position = 0;
+        for (Channel channel : channelList) {
+            if (filter.test(channel)) {
+                marked.set(position);
+            }
+            position++;
+        }
+        return compact(marked);
+    }
+
+    /**
+     * Removes the marked positions by moving every kept channel to its final
+     * position once, then truncating the list. The current position follows the
+     * tuned channel, and the search index is rebuilt once at the end.
+     *
+     * @param marked The positions to remove.
+     * @return The number of channels removed.
+     */
+    private int compact(BitSet marked) {
+        if (marked.isEmpty()) return 0;
+        ownLineup();
+        int size = channelList.size();
+        long state = tuning.get();
+        int write = 0;
+        int newCurrent = -1;
+        int newPrevious = -1;
+        for (int read = 0; read < size; read++) {
+            Channel channel = channelList.get(read);
+            if (marked.get(read)) {
+                if (table == null) {
+                    frequencyIndex[frequencySlot(channel.getFrequency())] = null;
+                }
+                continue;
+            }
+            if (read == currentOf(state)) {
+                newCurrent = write;
+            }
+            if (read == previousOf(state)) {
+                newPrevious = write;
+            }
+            if (write != read) {
+                channelList.set(write, channel);
+                favorites.set(write, favorites.get(read));
+            }
+            write++;
+        }
+        channelList.subList(write, size).clear();
+        for (int i = favorites.nextSetBit(write); i != -1; i = favorites.nextSetBit(i + 1)) {
+            favorites.set(i, false);
+        }
+        tuning.set(tuningState(newCurrent, newPrevious));
+
+        if (table == null) {
+            searchIndex.clear();
+            for (Channel channel : channelList) {
+                searchIndex.add(channel);
+            }
+        }
+        lineupChanged();
+        return size - write;
+    }
+
     /**
      * Finds the position of a channel based on its name or partial name.
      *
@@ -126,14 +650,50 @@ public class Television {
         if (nameQuery == null || nameQuery.isBlank()) {
             return -1;
         }
-        nameQuery = nameQuery.toLowerCase();
-        for (int i = 0; i < channelList.size(); i++) {
-            Channel channel = channelList.get(i);
-            if (channel.getName().toLowerCase().contains(nameQuery)) {
-                return i;
-            }
+        String searchKey = Channel.toSearchKey(nameQuery);
+        if (source != null) {
+            return source.find(searchKey, 0);
+        }
+        return table != null ? table.find(searchKey, 0) : searchIndex.find(searchKey, 0);
+    }
+
+    /**
+     * Finds the positions of all channels whose name contains the given query,
+     * ignoring case. The positions are produced in ascending order and only as
+     * the stream is consumed, so operations like {@code findFirst} or
+     * {@code limit} stop the search early. The stream must be consumed before
+     * the television is modified.
+     *
+     * @param nameQuery The name or partial name to search for.
+     * @return A lazy stream of the matching positions, empty if the query is blank.
+     */
+    public IntStream findChannelPositions(String nameQuery) {
+        return matches(nameQuery);
+    }
+
+    private IntStream matches(String nameQuery) {
+        if (nameQuery == null || nameQuery.isBlank()) {
+            return IntStream.empty();
         }
-        return -1;
+        String searchKey = Channel.toSearchKey(nameQuery);
+        PrimitiveIterator.OfInt matches = source != null ? source.matches(searchKey)
+                : table != null ? table.matches(searchKey)
+                : searchIndex.matches(searchKey);
+        return StreamSupport.intStream(Spliterators.spliteratorUnknownSize(matches,
+                Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Finds the positions of, at most, the first {@code limit} channels whose
+     * name contains the given query, ignoring case.
+     *
+     * @param nameQuery The name or partial name to search for.
+     * @param limit     The maximum number of positions to return, not negative.
+     * @return A lazy stream of the matching positions.
+     * @see #findChannelPositions(String)
+     */
+    public IntStream findChannelPositions(String nameQuery, int limit) {
+        return matches(nameQuery).limit(limit);
     }
 
     /**
@@ -147,14 +707,21 @@ public class Television {
         if (!isPositionValid(position1) || !isPositionValid(position2)) {
             return false;
         }
+        ownLineup();
         Channel aux = channelList.get(position1);
         channelList.set(position1, channelList.get(position2));
         channelList.set(position2, aux);
+        if (table == null) {
+            searchIndex.swap(position1, position2);
+        }
+        favorites.swap(position1, position2);
+        lineupChanged();
         return true;
     }
 
     /**
-     * Retrieves the channel at the specified position.
+     * Retrieves the channel at the specified position. Its favorite status in
+     * this television is given by {@link #isFavorite(int)}.
      *
      * @param position The position of the channel to retrieve.
      * @return The channel at the specified position, or {@code null} if the position is invalid.
@@ -166,17 +733,118 @@ public class Television {
         return channelList.get(position);
     }
 
+    /**
+     * Retrieves the channel with the specified frequency.
+     *
+     * @param frequency The frequency of the channel to retrieve, in MHz.
+     * @return The channel with the specified frequency, or {@code null} if there is none.
+     */
+    public Channel getChannelByFrequency(int frequency) {
+        int slot = frequencySlot(frequency);
+        if (slot == -1) {
+            return null;
+        }
+        if (source != null) {
+            int position = source.indexOfFrequency(frequency);
+            return position == -1 ? null : source.get(position);
+        }
+        if (table != null) {
+            int position = table.indexOfFrequency(frequency);
+            return position == -1 ? null : table.get(position);
+        }
+        return frequencyIndex[slot];
+    }
+
+    /**
+     * Returns an immutable snapshot of the lineup: the channels, their favorite
+     * status and the tuned position. Readers can use it freely while the
+     * television keeps being edited, since every edit publishes a new version
+     * instead of changing the previous one.
+     * <p>
+     * With an {@link IndexedChannelList} storage the snapshot shares its tree
+     * and takes O(1) time, and a mapped store is shared as it is, since it
+     * never changes. With other storages the channels are copied once
+     * per version and the copy is shared by every snapshot of that version.
+     * <p>
+     * Taking a snapshot reads the lineup, so, like the other methods, it must
+     * not run during a change to the channels from another thread;
+     * {@link ConcurrentTelevision} takes it under its lock.
+     *
+     * @return A snapshot of the current lineup.
+     */
+    public LineupSnapshot snapshot() {
+        long version = lineupVersion.get();
+        Published current = published;
+        if (current == null || current.version != version) {
+            List<Channel> channels;
+            if (channelList instanceof IndexedChannelList tree) {
+                channels = tree.snapshot();
+            } else if (source != null) {
+                channels = source;
+            } else {
+                channels = Collections.unmodifiableList(new ArrayList<>(channelList));
+            }
+            current = new Published(version, channels, new PositionBits(favorites));
+            // Skips publishing if a change completed during the copy; changes
+            // still in progress are not seen, so callers must exclude them
+            if (lineupVersion.get() == version) {
+                published = current;
+            }
+        }
+        return new LineupSnapshot(current.channels, current.favorites, currentPosition());
+    }
+
+    /**
+     * Channels and favorites of one version of the lineup, never changed after
+     * being published.
+     */
+    private static final class Published {
+        private final long version;
+        private final List<Channel> channels;
+        private final PositionBits favorites;
+
+        private Published(long version, List<Channel> channels, PositionBits favorites) {
+            this.version = version;
+            this.channels = channels;
+            this.favorites = favorites;
+        }
+    }
+
     /**
      * Returns a string representation of the television, including the current position,
-     * current channel, and the number of channels.
+     * current channel, and the number of channels. The representation is rendered
+     * once and reused until the television is tuned or its lineup changes.
      *
      * @return A formatted string representing the television's state.
      */
     @Override
     public String toString() {
-        String currentChannel = isTuned() ? getChannel(currentPosition).toString() : "None";
-        return String.format("Television[currentPosition=%d, currentChannel=%s, numberChannels=%d]",
-                currentPosition, currentChannel, getNumberOfChannels());
+        long version = lineupVersion.get();
+        long state = tuning.get();
+        Status cached = status;
+        if (cached != null && cached.version == version && cached.tuningState == state) {
+            return cached.text;
+        }
+        String text = LineupFormat.status(channelList, favorites, currentOf(state));
+        status = new Status(version, state, text);
+        return text;
+    }
+
+    /**
+     * Rendered status, with the lineup version and tuning state it was rendered
+     * from. A status rendered by a reader that raced with a change carries the
+     * old version, so it is never reused.
+     */
+    private static final class Status {
+        private final long version;
+        private final long tuningState;
+        private final String text;
+
+        private Status(long version, long tuningState, String text) {
+            this.version = version;
+            this.tuningState = tuningState;
+            this.text = text;
+        }
     }
 
     /**
@@ -185,11 +853,18 @@ public class Television {
      * @return A formatted string containing the list of channels.
      */
     public String channelList() {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < channelList.size(); i++) {
-            sb.append(String.format("%3d. %s\n", (i + 1), channelList.get(i)));
-        }
-        return sb.toString();
+        return LineupFormat.render(channelList.size() * 96, this::channelList);
+    }
+
+    /**
+     * Writes the same list as {@link #channelList()} straight into the given
+     * destination, one row at a time, so no string of the whole list is built.
+     *
+     * @param out The destination, such as a {@code Writer} or a {@code PrintStream}.
+     * @throws IOException If the destination fails.
+     */
+    public void channelList(Appendable out) throws IOException {
+        LineupFormat.appendChannelList(out, channelList, favorites);
     }
 
     /**
@@ -197,13 +872,74 @@ public class Television {
      * loading the default set.
      */
     public void factorySettings() {
+        resetChannels();
+    }
+
+    /**
+     * Points the television at the shared {@link FactoryLineup}. The indexes
+     * are shared as they are, and a tree storage shares the factory tree, so
+     * nothing is allocated; other storages get the ten factory channels copied,
+     * and a table storage keeps no indexes.
+     */
+    private void resetChannels() {
+        detachSource();
+        if (channelList instanceof IndexedChannelList tree) {
+            tree.assign(FactoryLineup.TREE);
+        } else {
+            channelList.clear();
+            for (Channel channel : FactoryLineup.CHANNELS) {
+                channelList.add(channel);
+            }
+        }
+        if (table == null) {
+            frequencyIndex = FactoryLineup.FREQUENCY_INDEX;
+            searchIndex = FactoryLineup.SEARCH_INDEX;
+            sharedIndexes = true;
+        }
+        favorites.clear();
+        tuning.set(tuningState(-1, -1));
+        lineupChanged();
+    }
+
+    /**
+     * Replaces the whole state of the television with a saved one, as read by
+     * {@link TelevisionStore}. The channels must have distinct, valid
+     * frequencies; the indexes are rebuilt once for the whole list.
+     *
+     * @param channels        The channels, in position order.
+     * @param favoriteBits    The positions of the favorite channels.
+     * @param currentPosition The tuned position, or -1 if none.
+     */
+    void restore(Channel[] channels, PositionBits favoriteBits, int currentPosition) {
+        detachSource();
         channelList.clear();
-        currentPosition = -1;
-        for (Channel ch : factoryChannels) {
-            if (ch.isFavorite()) {
-                ch.toggleFavorite();
+        if (channelList instanceof ArrayList<Channel> list) {
+            list.ensureCapacity(channels.length);
+        }
+        channelList.addAll(Arrays.asList(channels));
+        if (table == null) {
+            frequencyIndex = new Channel[Channel.MAX_FREQUENCY - Channel.MIN_FREQUENCY + 1];
+            searchIndex = new ChannelSearchIndex();
+            sharedIndexes = false;
+            for (Channel channel : channels) {
+                frequencyIndex[frequencySlot(channel.getFrequency())] = channel;
+                searchIndex.add(channel);
             }
-            channelList.add(ch);
+        }
+        favorites = favoriteBits;
+        favorites.ensureCapacity(channels.length);
+        tuning.set(tuningState(currentPosition, -1));
+        lineupChanged();
+    }
+
+    /**
+     * Stops reading the channels from the mapped store, before the whole
+     * lineup is replaced, giving the television an empty list of its own.
+     */
+    private void detachSource() {
+        if (source != null) {
+            channelList = new ArrayList<>();
+            source = null;
         }
     }
 }
@@ -0,0 +1,650 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Fleet of televisions, like the set-top boxes of a provider, kept in a few
+ * arrays indexed by device instead of as one {@link Television} per device.
+ * Devices are identified by the number returned when they are added, from 0
+ * up, and every operation of {@code Television} is available for a device,
+ * taking that number as first argument.
+ * <p>
+ * Devices share their lineups copy-on-write. Every device starts pointing at
+ * the {@link FactoryLineup}, which is never copied, and a device that edits
+ * its lineup gets its own copy on the first edit, unless no other device
+ * shares it. The copy only holds references to the channels, which are shared
+ * too. The tuned and previous positions take a byte each, since a lineup
+ * holds at most one channel per valid frequency, and the favorite positions
+ * are only allocated for devices that have favorites. A device that never
+ * leaves the factory lineup costs about ten bytes, so ten million of them
+ * were measured at around 86 MB of heap.
+ * <p>
+ * The fleet is not safe for concurrent use, since devices share lineups:
+ * callers serving devices from several threads must lock the whole fleet.
+ */
+public class TelevisionFleet {
+
+    /**
+     * Highest number of channels a lineup can hold, one per valid frequency.
+     */
+    private static final int MAX_CHANNELS = countFrequencies();
+
+    private static final Lineup FACTORY =
+            new Lineup(FactoryLineup.CHANNELS.toArray(new Channel[0]), FactoryLineup.CHANNELS.size());
+
+    private int size;
+    private Lineup[] lineups;
+
+    /**
+     * Tuned and previous position of each device plus one, so that 0 means
+     * none. Positions are below {@link #MAX_CHANNELS}, so they fit a byte.
+     */
+    private byte[] current;
+    private byte[] previous;
+
+    /**
+     * Favorite positions of each device, or {@code null} if it never had any.
+     */
+    private PositionBits[] favorites;
+
+    /**
+     * Constructs an empty fleet.
+     */
+    public TelevisionFleet() {
+        this(16);
+    }
+
+    /**
+     * Constructs an empty fleet with room for the given number of devices.
+     *
+     * @param capacity The initial number of devices the fleet can hold.
+     */
+    public TelevisionFleet(int capacity) {
+        capacity = Math.max(capacity, 1);
+        lineups = new Lineup[capacity];
+        current = new byte[capacity];
+        previous = new byte[capacity];
+        favorites = new PositionBits[capacity];
+    }
+
+    /**
+     * Returns the number of devices in the fleet.
+     *
+     * @return The number of devices.
+     */
+    public int getNumberOfDevices() {
+        return size;
+    }
+
+    /**
+     * Adds a device with the factory default channels.
+     *
+     * @return The number of the new device.
+     */
+    public int addDevice() {
+        return addDevices(1);
+    }
+
+    /**
+     * Adds several devices with the factory default channels, growing the
+     * fleet once.
+     *
+     * @param count The number of devices to add, not negative.
+     * @return The number of the first new device; the others follow it.
+     */
+    public int addDevices(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Negative device count.");
+        }
+        int first = size;
+        ensureCapacity(size + count);
+        Arrays.fill(lineups, first, first + count, FACTORY);
+        size += count;
+        return first;
+    }
+
+    /**
+     * Adds a device with the same channels, favorites and tuning as an
+     * existing one. Both devices share the lineup until one of them edits it.
+     *
+     * @param device The device to copy.
+     * @return The number of the new device, or -1 if the device to copy does not exist.
+     */
+    public int copyDevice(int device) {
+        if (!isDeviceValid(device)) return -1;
+        ensureCapacity(size + 1);
+        int copy = size++;
+        Lineup lineup = lineups[device];
+        if (lineup != FACTORY) {
+            lineup.owners++;
+        }
+        lineups[copy] = lineup;
+        current[copy] = current[device];
+        previous[copy] = previous[device];
+        favorites[copy] = favorites[device] == null ? null : new PositionBits(favorites[device]);
+        return copy;
+    }
+
+    private void ensureCapacity(int devices) {
+        if (devices > lineups.length) {
+            int capacity = Math.max(devices, lineups.length * 2);
+            lineups = Arrays.copyOf(lineups, capacity);
+            current = Arrays.copyOf(current, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+            favorites = Arrays.copyOf(favorites, capacity);
+        }
+    }
+
+    private boolean isDeviceValid(int device) {
+        return device >= 0 && device < size;
+    }
+
+    private boolean isPositionValid(int device, int position) {
+        return isDeviceValid(device) && position >= 0 && position < lineups[device].size;
+    }
+
+    private int currentPosition(int device) {
+        return (current[device] & 0xFF) - 1;
+    }
+
+    private int previousPosition(int device) {
+        return (previous[device] & 0xFF) - 1;
+    }
+
+    private void setTuning(int device, int currentPosition, int previousPosition) {
+        current[device] = (byte) (currentPosition + 1);
+        previous[device] = (byte) (previousPosition + 1);
+    }
+
+    /**
+     * Returns the lineup of a device, copying it first if other devices share it.
+     */
+    private Lineup editableLineup(int device) {
+        Lineup lineup = lineups[device];
+        if (lineup != FACTORY && lineup.owners == 1) return lineup;
+        if (lineup != FACTORY) {
+            lineup.owners--;
+        }
+        Lineup copy = new Lineup(Arrays.copyOf(lineup.channels, lineup.size + 1), lineup.size);
+        lineups[device] = copy;
+        return copy;
+    }
+
+    /**
+     * Returns a view of the channels of a device, without copying them.
+     */
+    private List<Channel> channels(int device) {
+        Lineup lineup = lineups[device];
+        return Arrays.asList(lineup.channels).subList(0, lineup.size);
+    }
+
+    /**
+     * Counts the valid frequencies of every band, and checks that a position
+     * among them, plus one, still fits the unsigned bytes of the tuning arrays.
+     */
+    private static int countFrequencies() {
+        int count = 0;
+        for (Band band : Band.values()) {
+            if (band != Band.UNKWOWN) {
+                count += band.getMaxMHz() - band.getMinMHz() + 1;
+            }
+        }
+        if (count > 0xFF) {
+            throw new IllegalStateException("Too many frequencies for byte positions: " + count);
+        }
+        return count;
+    }
+
+    private PositionBits editableFavorites(int device) {
+        PositionBits bits = favorites[device];
+        if (bits == null) {
+            bits = new PositionBits();
+            favorites[device] = bits;
+        }
+        return bits;
+    }
+
+    /**
+     * Checks if a device is tuned to a channel.
+     *
+     * @param device The device.
+     * @return {@code true} if a channel is currently tuned, otherwise {@code false}.
+     * @see Television#isTuned()
+     */
+    public boolean isTuned(int device) {
+        return isDeviceValid(device) && currentPosition(device) != -1;
+    }
+
+    /**
+     * Returns the number of channels of a device.
+     *
+     * @param device The device.
+     * @return The number of channels, or 0 if the device does not exist.
+     * @see Television#getNumberOfChannels()
+     */
+    public int getNumberOfChannels(int device) {
+        return isDeviceValid(device) ? lineups[device].size : 0;
+    }
+
+    /**
+     * Tunes a device to the channel at the specified position.
+     *
+     * @param device   The device.
+     * @param position The position of the channel to tune to.
+     * @return {@code true} if the channel was successfully tuned, otherwise {@code false}.
+     * @see Television#tunePosition(int)
+     */
+    public boolean tunePosition(int device, int position) {
+        if (!isPositionValid(device, position)) return false;
+        tune(device, position);
+        return true;
+    }
+
+    private void tune(int device, int position) {
+        int currentPosition = currentPosition(device);
+        if (currentPosition != position) {
+            setTuning(device, position, currentPosition);
+        }
+    }
+
+    /**
+     * Tunes a device {@code delta} positions after its current one, or before
+     * it if {@code delta} is negative, wrapping around the ends of the list.
+     *
+     * @param device The device.
+     * @param delta  The number of positions to move.
+     * @return {@code true} if a channel was tuned, otherwise {@code false}.
+     * @see Television#tuneRelative(int)
+     */
+    public boolean tuneRelative(int device, int delta) {
+        if (!isDeviceValid(device)) return false;
+        int channels = lineups[device].size;
+        int currentPosition = currentPosition(device);
+        if (channels == 0 || delta == 0 && currentPosition == -1) return false;
+        int from = currentPosition != -1 ? currentPosition : (delta > 0 ? -1 : channels);
+        tune(device, Math.floorMod((long) from + delta, channels));
+        return true;
+    }
+
+    /**
+     * Tunes a device to its next channel, wrapping around to the first one.
+     *
+     * @param device The device.
+     * @return {@code true} if a channel was tuned, otherwise {@code false}.
+     */
+    public boolean channelUp(int device) {
+        return tuneRelative(device, 1);
+    }
+
+    /**
+     * Tunes a device to its previous channel, wrapping around to the last one.
+     *
+     * @param device The device.
+     * @return {@code true} if a channel was tuned, otherwise {@code false}.
+     */
+    public boolean channelDown(int device) {
+        return tuneRelative(device, -1);
+    }
+
+    /**
+     * Tunes a device back to the channel it was tuned to before the current one.
+     *
+     * @param device The device.
+     * @return {@code true} if the previous channel was tuned, otherwise {@code false}.
+     * @see Television#previousChannel()
+     */
+    public boolean previousChannel(int device) {
+        if (!isDeviceValid(device) || previousPosition(device) == -1) return false;
+        setTuning(device, previousPosition(device), currentPosition(device));
+        return true;
+    }
+
+    /**
+     * Toggles the favorite status of the channel a device is tuned to.
+     *
+     * @param device The device.
+     * @return {@code true} if the favorite status was successfully toggled, otherwise {@code false}.
+     */
+    public boolean toggleFavorite(int device) {
+        if (!isDeviceValid(device) || currentPosition(device) == -1) return false;
+        PositionBits bits = editableFavorites(device);
+        bits.ensureCapacity(currentPosition(device) + 1);
+        bits.flip(currentPosition(device));
+        return true;
+    }
+
+    /**
+     * Checks if the channel at the specified position is a favorite of a device.
+     *
+     * @param device   The device.
+     * @param position The position of the channel.
+     * @return {@code true} if the channel is a favorite, otherwise {@code false}.
+     */
+    public boolean isFavorite(int device, int position) {
+        return isPositionValid(device, position) && favorites[device] != null && favorites[device].get(position);
+    }
+
+    /**
+     * Tunes a device to its next favorite channel, wrapping around to the start of the list.
+     *
+     * @param device The device.
+     * @return {@code true} if a favorite channel was tuned, otherwise {@code false}.
+     * @see Television#nextFavorite()
+     */
+    public boolean nextFavorite(int device) {
+        if (!isDeviceValid(device) || favorites[device] == null) return false;
+        PositionBits bits = favorites[device];
+        int position = bits.nextSetBit(currentPosition(device) + 1);
+        if (position == -1) {
+            position = bits.nextSetBit(0);
+        }
+        return position != -1 && tunePosition(device, position);
+    }
+
+    /**
+     * Tunes a device to its previous favorite channel, wrapping around to the end of the list.
+     *
+     * @param device The device.
+     * @return {@code true} if a favorite channel was tuned, otherwise {@code false}.
+     * @see Television#previousFavorite()
+     */
+    public boolean previousFavorite(int device) {
+        if (!isDeviceValid(device) || favorites[device] == null) return false;
+        PositionBits bits = favorites[device];
+        int last = lineups[device].size - 1;
+        int currentPosition = currentPosition(device);
+        int position = bits.previousSetBit(currentPosition != -1 ? currentPosition - 1 : last);
+        if (position == -1) {
+            position = bits.previousSetBit(last);
+        }
+        return position != -1 && tunePosition(device, position);
+    }
+
+    /**
+     * Returns the positions of the favorite channels of a device, in ascending
+     * order. The stream must be consumed before the device is modified.
+     *
+     * @param device The device.
+     * @return A lazy stream of the positions of the favorite channels.
+     */
+    public IntStream favorites(int device) {
+        if (!isDeviceValid(device) || favorites[device] == null) {
+            return IntStream.empty();
+        }
+        return favorites[device].stream();
+    }
+
+    /**
+     * Adds a new channel at the end of the lineup of a device. There cannot
+     * exist channels with the same frequency in a lineup.
+     *
+     * @param device  The device.
+     * @param channel The channel to add.
+     * @return {@code true} if the channel was successfully added, otherwise {@code false}.
+     * @see Television#addChannel(Channel)
+     */
+    public boolean addChannel(int device, Channel channel) {
+        return isDeviceValid(device) && addChannel(device, lineups[device].size, channel);
+    }
+
+    /**
+     * Inserts a new channel in the lineup of a device, shifting the following
+     * channels. If the device is tuned to a following channel, it stays tuned to it.
+     *
+     * @param device   The device.
+     * @param position The position of the new channel, from 0 to the number of channels.
+     * @param channel  The channel to add.
+     * @return {@code true} if the channel was successfully added, otherwise {@code false}.
+     * @see Television#addChannel(int, Channel)
+     */
+    public boolean addChannel(int device, int position, Channel channel) {
+        if (!isDeviceValid(device) || channel == null) return false;
+        Lineup lineup = lineups[device];
+        if (position < 0 || position > lineup.size) return false;
+        if (lineup.indexOfFrequency(channel.getFrequency()) != -1) return false;
+
+        int channels = lineup.size;
+        editableLineup(device).insert(position, channel);
+        if (favorites[device] != null) {
+            editableFavorites(device).insert(position, false, channels);
+        }
+        int currentPosition = currentPosition(device);
+        int previousPosition = previousPosition(device);
+        setTuning(device, currentPosition >= position ? currentPosition + 1 : currentPosition,
+                previousPosition >= position ? previousPosition + 1 : previousPosition);
+        return true;
+    }
+
+    /**
+     * Removes the channel at the specified position from the lineup of a device.
+     * If the device is tuned to a following channel, it stays tuned to it.
+     *
+     * @param device   The device.
+     * @param position The position of the channel to remove.
+     * @return {@code true} if the channel was successfully removed, otherwise {@code false}.
+     * @see Television#removeChannel(int)
+     */
+    public boolean removeChannel(int device, int position) {
+        if (!isPositionValid(device, position)) return false;
+        editableLineup(device).remove(position);
+        if (favorites[device] != null) {
+            favorites[device].remove(position);
+        }
+        setTuning(device, remap(currentPosition(device), position), remap(previousPosition(device), position));
+        return true;
+    }
+
+    private static int remap(int position, int removed) {
+        return position == removed ? -1 : position > removed ? position - 1 : position;
+    }
+
+    /**
+     * Removes all channels that satisfy the given predicate from the lineup of
+     * a device. If the device is tuned to a channel that is kept, it stays
+     * tuned to it, otherwise it becomes untuned.
+     *
+     * @param device The device.
+     * @param filter The predicate that selects the channels to remove.
+     * @return The number of channels removed.
+     * @see Television#removeIf(Predicate)
+     */
+    public int removeIf(int device, Predicate<Channel> filter) {
+        if (!isDeviceValid(device) || filter == null) return 0;
+        int removed = 0;
+        for (int position = lineups[device].size - 1; position >= 0; position--) {
+            if (filter.test(lineups[device].channels[position])) {
+                removeChannel(device, position);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Swaps the positions of two channels in the lineup of a device.
+     *
+     * @param device    The device.
+     * @param position1 The position of the first channel.
+     * @param position2 The position of the second channel.
+     * @return {@code true} if the channels were successfully swapped, otherwise {@code false}.
+     */
+    public boolean swapChannels(int device, int position1, int position2) {
+        if (!isPositionValid(device, position1) || !isPositionValid(device, position2)) {
+            return false;
+        }
+        if (position1 == position2) return true;
+        Channel[] channels = editableLineup(device).channels;
+        Channel aux = channels[position1];
+        channels[position1] = channels[position2];
+        channels[position2] = aux;
+        if (favorites[device] != null) {
+            favorites[device].swap(position1, position2);
+        }
+        return true;
+    }
+
+    /**
+     * Finds the position of a channel of a device based on its name or partial
+     * name, ignoring case. Lineups are short, so the names are scanned.
+     *
+     * @param device    The device.
+     * @param nameQuery The name or partial name to search for.
+     * @return The position of the channel if found, otherwise -1.
+     */
+    public int findChannelPosition(int device, String nameQuery) {
+        if (!isDeviceValid(device) || nameQuery == null || nameQuery.isBlank()) {
+            return -1;
+        }
+        String searchKey = Channel.toSearchKey(nameQuery);
+        Lineup lineup = lineups[device];
+        for (int position = 0; position < lineup.size; position++) {
+            if (lineup.channels[position].matches(searchKey)) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Retrieves the channel at the specified position of a device. Channels are
+     * shared between devices; the favorite status of a device is given by
+     * {@link #isFavorite(int, int)}.
+     *
+     * @param device   The device.
+     * @param position The position of the channel to retrieve.
+     * @return The channel at the specified position, or {@code null} if the position is invalid.
+     */
+    public Channel getChannel(int device, int position) {
+        if (!isPositionValid(device, position)) {
+            return null;
+        }
+        return lineups[device].channels[position];
+    }
+
+    /**
+     * Retrieves the channel of a device with the specified frequency.
+     *
+     * @param device    The device.
+     * @param frequency The frequency of the channel to retrieve, in MHz.
+     * @return The channel with the specified frequency, or {@code null} if there is none.
+     */
+    public Channel getChannelByFrequency(int device, int frequency) {
+        if (!isDeviceValid(device)) {
+            return null;
+        }
+        Lineup lineup = lineups[device];
+        int position = lineup.indexOfFrequency(frequency);
+        return position == -1 ? null : lineup.channels[position];
+    }
+
+    /**
+     * Returns an immutable snapshot of the lineup of a device.
+     *
+     * @param device The device.
+     * @return A snapshot of the current lineup, or {@code null} if the device does not exist.
+     * @see Television#snapshot()
+     */
+    public LineupSnapshot snapshot(int device) {
+        if (!isDeviceValid(device)) {
+            return null;
+        }
+        Lineup lineup = lineups[device];
+        PositionBits bits = favorites[device] == null ? new PositionBits() : new PositionBits(favorites[device]);
+        return new LineupSnapshot(
+                Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(lineup.channels, lineup.size))),
+                bits, currentPosition(device));
+    }
+
+    /**
+     * Returns the same representation of a device as {@link Television#toString()}.
+     *
+     * @param device The device.
+     * @return A formatted string representing the state of the device.
+     */
+    public String status(int device) {
+        if (!isDeviceValid(device)) {
+            throw new IndexOutOfBoundsException("Device: " + device + ", Size: " + size);
+        }
+        return LineupFormat.status(channels(device), favorites[device], currentPosition(device));
+    }
+
+    /**
+     * Writes the list of channels of a device in the same format as {@link Television#channelList()}.
+     *
+     * @param device The device.
+     * @param out    The destination.
+     * @throws IOException If the destination fails.
+     */
+    public void channelList(int device, Appendable out) throws IOException {
+        if (!isDeviceValid(device)) return;
+        LineupFormat.appendChannelList(out, channels(device), favorites[device]);
+    }
+
+    /**
+     * Generates the list of channels of a device in the same format as {@link Television#channelList()}.
+     *
+     * @param device The device.
+     * @return A formatted string containing the list of channels.
+     */
+    public String channelList(int device) {
+        return LineupFormat.render(getNumberOfChannels(device) * 96, out -> channelList(device, out));
+    }
+
+    /**
+     * Resets a device to its factory settings. The device goes back to the
+     * shared factory lineup and drops its favorites and tuning.
+     *
+     * @param device The device.
+     */
+    public void factorySettings(int device) {
+        if (!isDeviceValid(device)) return;
+        Lineup lineup = lineups[device];
+        if (lineup != FACTORY) {
+            lineup.owners--;
+        }
+        lineups[device] = FACTORY;
+        favorites[device] = null;
+        setTuning(device, -1, -1);
+    }
+
+    /**
+     * Channels of a lineup, shared by the devices counted in {@code owners}.
+     * Only a lineup with a single owner is changed in place; the factory
+     * lineup is never changed.
+     */
+    private static final class Lineup {
+        private Channel[] channels;
+        private int size;
+        private int owners;
+
+        private Lineup(Channel[] channels, int size) {
+            this.channels = channels;
+            this.size = size;
+            this.owners = 1;
+        }
+
+        private int indexOfFrequency(int frequency) {
+            for (int i = 0; i < size; i++) {
+                if (channels[i].getFrequency() == frequency) return i;
+            }
+            return -1;
+        }
+
+        private void insert(int position, Channel channel) {
+            if (size == channels.length) {
+                channels = Arrays.copyOf(channels, Math.min(Math.max(size * 2, 1), MAX_CHANNELS));
+            }
+            System.arraycopy(channels, position, channels, position + 1, size - position);
+            channels[position] = channel;
+            size++;
+        }
+
+        private void remove(int position) {
+            System.arraycopy(channels, position + 1, channels, position, size - position - 1);
+            channels[--size] = null;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the operations made on a television, kept in a
+ * directory next to the snapshot it applies to. Each record is framed by its
+ * length and a CRC-32 of its bytes, so a record torn by a crash is detected
+ * and dropped, together with anything after it, when the log is recovered.
+ * <p>
+ * Records are gathered in a buffer and only written and forced to disk by
+ * {@link #sync()}, so several records share one {@code force()}. Compaction
+ * saves the television with {@link TelevisionStore} as a new numbered
+ * snapshot and starts an empty journal that names it in its header. Each
+ * step is a rename, so a crash at any point recovers either the old snapshot
+ * with the old journal, or the new snapshot with the empty one.
+ *
+ * @see JournaledTelevision
+ */
+final class TelevisionJournal implements AutoCloseable {
+
+    private static final int MAGIC = 0x54564A4C; // "TVJL"
+    private static final int HEADER_SIZE = 12;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String JOURNAL = "television.journal";
+    private static final String SNAPSHOT_PREFIX = "television-";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private final Path directory;
+    private final ByteBuffer pending = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private boolean closed;
+
+    /**
+     * Number of the snapshot the journal applies to, 0 for the factory settings.
+     */
+    private long base;
+
+    /**
+     * Bytes in the journal file, including the records still pending.
+     */
+    private long size;
+
+    private TelevisionJournal(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Opens the journal in a directory, creating it if needed, and brings a
+     * television up to date: the snapshot named by the journal is loaded into
+     * it and every valid record is passed to {@code replay}, in order.
+     *
+     * @param directory  The directory with the journal and its snapshots.
+     * @param television The television to restore, with factory settings.
+     * @param replay     Applies one record, positioned at its first byte.
+     * @return The open journal, ready to append new records.
+     * @throws IOException If the files cannot be read or written.
+     */
+    static TelevisionJournal open(Path directory, Television television, Consumer<ByteBuffer> replay)
+            throws IOException {
+        Files.createDirectories(directory);
+        TelevisionJournal journal = new TelevisionJournal(directory);
+        Path file = directory.resolve(JOURNAL);
+        if (!Files.exists(file)) {
+            journal.createJournal(file, 0);
+        }
+        journal.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            journal.recover(television, replay);
+        } catch (IOException | RuntimeException e) {
+            journal.channel.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    private void recover(Television television, Consumer<ByteBuffer> replay) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not a television journal: " + directory.resolve(JOURNAL));
+        }
+        base = header.getLong(4);
+        if (base > 0) {
+            TelevisionStore.load(snapshot(base), television);
+        }
+        deleteSnapshotsExcept(base);
+
+        ByteBuffer data = ByteBuffer.allocate((int) Math.min(channel.size() - HEADER_SIZE, Integer.MAX_VALUE));
+        readFully(data, HEADER_SIZE);
+        data.flip();
+        while (data.remaining() >= 8) {
+            int length = data.getInt(data.position());
+            int checksum = data.getInt(data.position() + 4);
+            if (length < 0 || length > data.remaining() - 8) break;
+            ByteBuffer record = data.slice(data.position() + 8, length);
+            crc.reset();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != checksum) break;
+            replay.accept(record);
+            data.position(data.position() + 8 + length);
+        }
+        // Anything after the last valid record was torn by a crash
+        size = HEADER_SIZE + data.position();
+        channel.truncate(size);
+        channel.position(size);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                if (position == 0) {
+                    throw new IOException("Truncated television journal: " + directory.resolve(JOURNAL));
+                }
+                return;
+            }
+        }
+    }
+
+    private void createJournal(Path file, long snapshotNumber) throws IOException {
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putLong(snapshotNumber).flip();
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            out.force(true);
+        }
+    }
+
+    private Path snapshot(long number) {
+        return directory.resolve(SNAPSHOT_PREFIX + number + SNAPSHOT_SUFFIX);
+    }
+
+    private void deleteSnapshotsExcept(long number) throws IOException {
+        String kept = snapshot(number).getFileName().toString();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*")) {
+            for (Path file : files) {
+                if (!file.getFileName().toString().equals(kept)) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the size of the journal, including the records not yet written.
+     *
+     * @return The size of the journal, in bytes.
+     */
+    synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Appends a record. It is kept in memory until the next {@link #sync()}.
+     *
+     * @param record The bytes of the record, from its position to its limit.
+     * @throws IOException If the buffer was full and could not be written, or
+     *                     the journal is closed.
+     */
+    synchronized void append(ByteBuffer record) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        int length = record.remaining();
+        if (pending.remaining() < length + 8) {
+            writePending();
+        }
+        crc.reset();
+        crc.update(record.duplicate());
+        ByteBuffer frame = pending.remaining() >= length + 8 ? pending : ByteBuffer.allocate(length + 8);
+        frame.putInt(length).putInt((int) crc.getValue()).put(record);
+        if (frame != pending) {
+            frame.flip();
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+        }
+        size += length + 8;
+    }
+
+    /**
+     * Writes the pending records. If writing fails, the bytes not written are
+     * kept, so the next attempt carries on from where this one stopped.
+     */
+    private void writePending() throws IOException {
+        pending.flip();
+        try {
+            while (pending.hasRemaining()) {
+                channel.write(pending);
+            }
+        } finally {
+            pending.compact();
+        }
+    }
+
+    /**
+     * Writes the pending records and forces them to disk with a single
+     * {@code force()}.
+     *
+     * @throws IOException If the journal cannot be written.
+     */
+    synchronized void sync() throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        writePending();
+        channel.force(false);
+    }
+
+    /**
+     * Saves the television as a new snapshot and replaces the journal with an
+     * empty one that applies to it. The snapshot holds every change, so it
+     * also recovers from a record that could not be appended or written.
+     *
+     * @param television The television, with every appended record applied.
+     * @throws IOException If the files cannot be written.
+     */
+    synchronized void compact(Television television) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        try {
+            sync();
+        } catch (IOException e) {
+            // The snapshot below holds these records too
+            pending.clear();
+        }
+        long next = base + 1;
+        TelevisionStore.save(television, snapshot(next));
+        forceDirectory();
+
+        Path journal = directory.resolve(JOURNAL);
+        Path emptyJournal = directory.resolve(JOURNAL + ".tmp");
+        createJournal(emptyJournal, next);
+        channel.close();
+        Files.move(emptyJournal, journal, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        channel = FileChannel.open(journal, StandardOpenOption.WRITE);
+        channel.position(HEADER_SIZE);
+        size = HEADER_SIZE;
+        base = next;
+        forceDirectory();
+        deleteSnapshotsExcept(base);
+    }
+
+    /**
+     * Forces the entries of the directory to disk, so a rename is durable
+     * before the files it replaces are deleted. Platforms that cannot open a
+     * directory, like Windows, make renames durable by themselves.
+     *
+     * @throws IOException If the directory cannot be forced.
+     */
+    private void forceDirectory() throws IOException {
+        FileChannel entries;
+        try {
+            entries = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (entries) {
+            entries.force(true);
+        }
+    }
+
+    /**
+     * Forces the pending records to disk and closes the journal.
+     *
+     * @throws IOException If the journal cannot be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            writePending();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+}
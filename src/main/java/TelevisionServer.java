@@ -0,0 +1,167 @@
+import java.io.Flushable;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * TCP server that lets remote controls drive televisions with the commands
+ * of {@link BatchCommands}, one command per line. Each connection is served
+ * by its own thread, which blocks while the client is idle, and gets either
+ * its own {@link Television} or a single {@link ConcurrentTelevision} shared
+ * by every connection.
+ * <p>
+ * Connections run on virtual threads when the JVM has them, so idle sessions
+ * cost little more than their buffers: the input buffer starts small and
+ * never grows past {@value #MAX_LINE} bytes, a connection sending a longer
+ * line is closed, and answers are only held until they are written. Older JVMs fall back to
+ * platform threads with small stacks.
+ */
+public final class TelevisionServer implements AutoCloseable {
+
+    private static final int SESSION_BUFFER_SIZE = 512;
+
+    /**
+     * Longest line accepted; a connection sending a longer one is closed.
+     */
+    private static final int MAX_LINE = 64 * 1024;
+
+    private final ServerSocketChannel server;
+    private final ExecutorService sessions;
+
+    /**
+     * Television shared by every connection, or {@code null} to give each
+     * connection its own.
+     */
+    private final Television shared;
+
+    /**
+     * Starts listening on the given port of every local address.
+     *
+     * @param port   The port, or 0 for any free one.
+     * @param shared {@code true} to share one television between every connection.
+     * @throws IOException If the port cannot be bound.
+     */
+    public TelevisionServer(int port, boolean shared) throws IOException {
+        this.server = ServerSocketChannel.open();
+        this.server.bind(new InetSocketAddress(port), 1024);
+        this.sessions = newSessionExecutor();
+        this.shared = shared ? new ConcurrentTelevision() : null;
+    }
+
+    /**
+     * Runs each task on a new virtual thread if the JVM has them (Java 21 on),
+     * otherwise on a pool of daemon platform threads with small stacks.
+     */
+    private static ExecutorService newSessionExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(null, task, "television-session", 256 * 1024);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return The local port.
+     * @throws IOException If the server is closed.
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Accepts connections until the server is closed, serving each one on its
+     * own thread.
+     *
+     * @throws IOException If accepting fails for a reason other than closing the server.
+     */
+    public void serve() throws IOException {
+        while (server.isOpen()) {
+            SocketChannel client;
+            try {
+                client = server.accept();
+            } catch (IOException e) {
+                if (!server.isOpen()) return;
+                throw e;
+            }
+            sessions.execute(() -> serve(client));
+        }
+    }
+
+    private void serve(SocketChannel client) {
+        try (client) {
+            Television television = shared != null ? shared : new Television();
+            new BatchCommands(television, new Answers(client), SESSION_BUFFER_SIZE, MAX_LINE).run(client);
+        } catch (IOException e) {
+            // The client went away or sent a line too long, nothing left to answer
+        }
+    }
+
+    /**
+     * Stops accepting connections and the sessions still open.
+     *
+     * @throws IOException If the server socket cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        sessions.shutdownNow();
+    }
+
+    /**
+     * Answers of a session, held in a string builder until the session waits
+     * for the next command, then encoded and written to the client at once.
+     */
+    private static final class Answers implements Appendable, Flushable {
+        private final SocketChannel client;
+        private final StringBuilder pending = new StringBuilder();
+
+        private Answers(SocketChannel client) {
+            this.client = client;
+        }
+
+        @Override
+        public Appendable append(CharSequence text) {
+            pending.append(text);
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence text, int start, int end) {
+            pending.append(text, start, end);
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            pending.append(c);
+            return this;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (pending.length() == 0) return;
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(pending));
+            while (bytes.hasRemaining()) {
+                client.write(bytes);
+            }
+            pending.setLength(0);
+            if (pending.capacity() > 4 * SESSION_BUFFER_SIZE) {
+                pending.trimToSize();
+            }
+        }
+    }
+}
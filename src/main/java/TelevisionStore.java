@@ -0,0 +1,306 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves and loads the state of a television (its channels, their favorite
+ * status and the tuned position) in a compact binary file.
+ * <p>
+ * The file holds, in order: a magic number and a format version; the number
+ * of channels and the tuned position plus one; a table with every distinct
+ * name once, as UTF-8; for each channel, the index of its name in the table
+ * (0 for no name) and its frequency minus {@link Channel#MIN_FREQUENCY}; and
+ * a bitmap of the favorite positions. Every number is a varint, so a channel
+ * usually takes two or three bytes besides its name. The file is written and
+ * read through a {@link FileChannel} with a direct buffer, in one pass.
+ */
+public final class TelevisionStore {
+
+    private static final int MAGIC = 0x54564C4E; // "TVLN"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private TelevisionStore() {
+    }
+
+    /**
+     * Saves the state of a television to a file, replacing its content. The
+     * save is written to a temporary file in the same directory, forced to
+     * disk and then moved over the file, so the file always holds either the
+     * old save or the whole new one.
+     *
+     * @param television The television to save.
+     * @param file       The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void save(Television television, Path file) throws IOException {
+        LineupSnapshot snapshot = television.snapshot();
+        List<Channel> channels = snapshot.getChannels();
+        int size = channels.size();
+
+        Map<String, Integer> nameIndexes = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        int[] channelNames = new int[size];
+        for (int i = 0; i < size; i++) {
+            String name = channels.get(i).getName();
+            if (name == null) continue;
+            Integer index = nameIndexes.putIfAbsent(name, names.size() + 1);
+            if (index == null) {
+                names.add(name);
+                index = names.size();
+            }
+            channelNames[i] = index;
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 Output out = new Output(channel)) {
+                out.putInt(MAGIC);
+                out.putVarint(VERSION);
+                out.putVarint(size);
+                out.putVarint(snapshot.getCurrentPosition() + 1);
+                out.putVarint(names.size());
+                for (String name : names) {
+                    out.putBytes(name.getBytes(StandardCharsets.UTF_8));
+                }
+                for (int i = 0; i < size; i++) {
+                    out.putVarint(channelNames[i]);
+                    out.putVarint(channels.get(i).getFrequency() - Channel.MIN_FREQUENCY);
+                }
+                for (int i = 0; i < size; i += 8) {
+                    int bits = 0;
+                    for (int j = 0; j < 8 && i + j < size; j++) {
+                        if (snapshot.isFavorite(i + j)) {
+                            bits |= 1 << j;
+                        }
+                    }
+                    out.putByte(bits);
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    /**
+     * Loads a television saved with {@link #save(Television, Path)}.
+     *
+     * @param file The file to read.
+     * @return A new television with the saved state.
+     * @throws IOException If the file cannot be read or is not a valid save.
+     */
+    public static Television load(Path file) throws IOException {
+        Television television = new Television();
+        load(file, television);
+        return television;
+    }
+
+    /**
+     * Replaces the state of a television with the one saved in a file. The
+     * television keeps its storage; nothing changes if the file is not valid.
+     *
+     * @param file       The file to read.
+     * @param television The television to restore.
+     * @throws IOException If the file cannot be read or is not a valid save.
+     */
+    public static void load(Path file, Television television) throws IOException {
+        Channel[] channels;
+        PositionBits favorites = new PositionBits();
+        int currentPosition;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Input in = new Input(channel);
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a television save: " + file);
+            }
+            int version = in.getVarint();
+            if (version != VERSION) {
+                throw new IOException("Unsupported save version: " + version);
+            }
+            // A lineup holds at most one channel per frequency, and one name per channel
+            int size = in.getVarint();
+            if (size > Channel.MAX_FREQUENCY - Channel.MIN_FREQUENCY + 1) {
+                throw new IOException("Corrupt save: too many channels.");
+            }
+            currentPosition = in.getVarint() - 1;
+            if (currentPosition < -1 || currentPosition >= size) {
+                throw new IOException("Corrupt save: tuned position out of range.");
+            }
+            int nameCount = in.getVarint();
+            if (nameCount > size) {
+                throw new IOException("Corrupt save: too many names.");
+            }
+
+            String[] names = new String[nameCount + 1];
+            for (int i = 1; i < names.length; i++) {
+                names[i] = new String(in.getBytes(), StandardCharsets.UTF_8);
+            }
+
+            channels = new Channel[size];
+            boolean[] used = new boolean[Channel.MAX_FREQUENCY - Channel.MIN_FREQUENCY + 1];
+            for (int i = 0; i < size; i++) {
+                int name = in.getVarint();
+                int slot = in.getVarint();
+                if (name >= names.length || slot >= used.length || used[slot]) {
+                    throw new IOException("Corrupt save: invalid channel at position " + i + ".");
+                }
+                used[slot] = true;
+                try {
+                    channels[i] = new Channel(names[name], slot + Channel.MIN_FREQUENCY);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Corrupt save: invalid channel at position " + i + ".", e);
+                }
+            }
+
+            favorites.ensureCapacity(size);
+            for (int i = 0; i < size; i += 8) {
+                int bits = in.getByte();
+                for (int j = 0; j < 8 && i + j < size; j++) {
+                    if ((bits & (1 << j)) != 0) {
+                        favorites.set(i + j, true);
+                    }
+                }
+            }
+        }
+        television.restore(channels, favorites, currentPosition);
+    }
+
+    /**
+     * Buffered writer of varints and byte strings to a file channel.
+     */
+    private static final class Output implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        private Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void putByte(int value) throws IOException {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+
+        private void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        private void putVarint(int value) throws IOException {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        private void putBytes(byte[] bytes) throws IOException {
+            putVarint(bytes.length);
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * Buffered reader of varints and byte strings from a file channel.
+     */
+    private static final class Input {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        private Input(FileChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) return;
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) == -1) {
+                    throw new EOFException("Truncated television save.");
+                }
+            }
+            buffer.flip();
+        }
+
+        private int getByte() throws IOException {
+            ensure(1);
+            return buffer.get() & 0xFF;
+        }
+
+        private int getInt() throws IOException {
+            ensure(4);
+            return buffer.getInt();
+        }
+
+        private int getVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = getByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value < 0) break;
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt save: invalid number.");
+        }
+
+        private byte[] getBytes() throws IOException {
+            int length = getVarint();
+            if (length > channel.size()) {
+                throw new IOException("Corrupt save: string longer than the file.");
+            }
+            byte[] bytes = new byte[length];
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.get(bytes, offset, chunk);
+                offset += chunk;
+            }
+            return bytes;
+        }
+    }
+}
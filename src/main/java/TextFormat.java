@@ -0,0 +1,148 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Helpers to write numbers straight into an {@link Appendable}, without going
+ * through {@link String#format} or creating intermediate strings, and to read
+ * them back from text or bytes without throwing on malformed input.
+ */
+final class TextFormat {
+
+    /**
+     * Value returned by the {@code parseInt} methods when the input is not a
+     * decimal number that fits an {@code int}.
+     */
+    public static final long NOT_A_NUMBER = Long.MIN_VALUE;
+
+    private TextFormat() {
+    }
+
+    /**
+     * Appends the decimal representation of a number.
+     *
+     * @param out   The destination.
+     * @param value The number to append.
+     * @throws IOException If the destination fails.
+     */
+    public static void appendInt(Appendable out, int value) throws IOException {
+        if (out instanceof StringBuilder sb) {
+            sb.append(value);
+            return;
+        }
+        long v = value;
+        if (v < 0) {
+            out.append('-');
+            v = -v;
+        }
+        long divisor = 1;
+        while (divisor * 10 <= v) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + (v / divisor) % 10));
+        }
+    }
+
+    /**
+     * Appends the decimal representation of a number, padded on the left with
+     * spaces up to the given width, like {@code %<width>d}.
+     *
+     * @param out   The destination.
+     * @param value The number to append.
+     * @param width The minimum number of characters to append.
+     * @throws IOException If the destination fails.
+     */
+    public static void appendInt(Appendable out, int value, int width) throws IOException {
+        for (int i = width - digits(value); i > 0; i--) {
+            out.append(' ');
+        }
+        appendInt(out, value);
+    }
+
+    /**
+     * Returns the number of characters of the decimal representation of a number.
+     */
+    private static int digits(int value) {
+        long v = value;
+        int count = 1;
+        if (v < 0) {
+            count++;
+            v = -v;
+        }
+        while (v >= 10) {
+            v /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Parses a decimal {@code int}, with an optional sign and any number of
+     * leading zeros, like {@link Integer#parseInt(String)}, but reports
+     * malformed input with a return value instead of an exception.
+     *
+     * @param text The text to parse.
+     * @return The number, or {@link #NOT_A_NUMBER} if the text is not one.
+     */
+    public static long parseInt(CharSequence text) {
+        return parseInt(text, 0, text.length());
+    }
+
+    /**
+     * Parses a decimal {@code int} from part of a text.
+     *
+     * @param text  The text.
+     * @param start The index of the first character.
+     * @param end   The index after the last character.
+     * @return The number, or {@link #NOT_A_NUMBER} if the characters are not one.
+     * @see #parseInt(CharSequence)
+     */
+    public static long parseInt(CharSequence text, int start, int end) {
+        boolean negative = start < end && text.charAt(start) == '-';
+        int i = negative || start < end && text.charAt(start) == '+' ? start + 1 : start;
+        if (i == end) return NOT_A_NUMBER;
+        while (i < end - 1 && text.charAt(i) == '0') {
+            i++;
+        }
+        if (end - i > 10) return NOT_A_NUMBER;
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return NOT_A_NUMBER;
+            value = value * 10 + digit;
+        }
+        return toInt(negative ? -value : value);
+    }
+
+    /**
+     * Parses a decimal {@code int} from ASCII bytes, without decoding them.
+     * The bytes are read at absolute indexes, so the position and limit of
+     * the buffer are left as they are.
+     *
+     * @param bytes The buffer, on the heap or direct.
+     * @param start The index of the first byte.
+     * @param end   The index after the last byte.
+     * @return The number, or {@link #NOT_A_NUMBER} if the bytes are not one.
+     * @see #parseInt(CharSequence)
+     */
+    public static long parseInt(ByteBuffer bytes, int start, int end) {
+        boolean negative = start < end && bytes.get(start) == '-';
+        int i = negative || start < end && bytes.get(start) == '+' ? start + 1 : start;
+        if (i == end) return NOT_A_NUMBER;
+        while (i < end - 1 && bytes.get(i) == '0') {
+            i++;
+        }
+        if (end - i > 10) return NOT_A_NUMBER;
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = bytes.get(i) - '0';
+            if (digit < 0 || digit > 9) return NOT_A_NUMBER;
+            value = value * 10 + digit;
+        }
+        return toInt(negative ? -value : value);
+    }
+
+    private static long toInt(long value) {
+        return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? NOT_A_NUMBER : value;
+    }
+}